@@ -0,0 +1,61 @@
+package incident;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// A JSON array response (the incidents API, Importer, IncidentRouter) into incidents:
+// splitTopLevelObjects + legacy getters on the whole body as a String, ArrayReader streaming
+// each element into Incident.fromNdjson, Jackson MappingIterator. Scores are per element.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ArrayBench {
+
+    static final int ELEMENTS = 1000;
+
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    private byte[] array;
+    private final ObjectReader jackson = new ObjectMapper().readerFor(IncidentJson.class);
+
+    @Setup
+    public void setup() {
+        array = Payloads.array(Payloads.incidents(size, ELEMENTS));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public void legacySplit(Blackhole bh) {
+        for (String obj : JsonBench.Legacy.splitTopLevelObjects(new String(array, StandardCharsets.UTF_8))) {
+            bh.consume(JsonBench.Legacy.fromNdjson(obj));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public void arrayReader(Blackhole bh) throws IOException {
+        try (JsonMini.ArrayReader arr = new JsonMini.ArrayReader(new ByteArrayInputStream(array))) {
+            while (arr.next()) bh.consume(Incident.fromNdjson(arr.buf(), arr.from(), arr.to()));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public void jackson(Blackhole bh) throws IOException {
+        try (MappingIterator<IncidentJson> it = jackson.readValues(array)) {
+            while (it.hasNext()) bh.consume(it.next());
+        }
+    }
+}
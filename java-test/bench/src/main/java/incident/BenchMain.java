@@ -0,0 +1,22 @@
+package incident;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// JMH's own Main with the GC profiler on by default, so every result also has
+// gc.alloc.rate.norm (bytes allocated per op). All JMH options work as usual; giving any
+// -prof replaces the default.
+//
+//   java -jar target/benchmarks.jar [regexp] [-p size=large] [-f 1 -wi 3 -i 5] [-prof stack]
+public class BenchMain {
+
+    public static void main(String[] args) throws Exception {
+        List<String> a = new ArrayList<>(Arrays.asList(args));
+        if (!a.contains("-prof")) {
+            a.add("-prof");
+            a.add("gc");
+        }
+        org.openjdk.jmh.Main.main(a.toArray(new String[0]));
+    }
+}
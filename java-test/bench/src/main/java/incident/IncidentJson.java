@@ -0,0 +1,38 @@
+package incident;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+// Jackson baseline: the Incident fields mapped the way weather-app maps its responses
+// (public fields, unknown keys ignored); nulls left out and keys in Incident.toJson order, so
+// both sides read and write the same documents.
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonPropertyOrder({"id", "title", "body", "userId", "importedAt", "commentsCount", "uniqueEmailsCount",
+        "enrichedAt", "createdAt"})
+public class IncidentJson {
+    public Integer id;
+    public String title;
+    public String body;
+    public Integer userId;
+    public String importedAt;
+    public Integer commentsCount;
+    public Integer uniqueEmailsCount;
+    public String enrichedAt;
+    public String createdAt;
+
+    static IncidentJson of(Incident inc) {
+        IncidentJson j = new IncidentJson();
+        j.id = inc.id;
+        j.title = inc.title();
+        j.body = inc.body();
+        j.userId = inc.userId;
+        j.importedAt = inc.importedAt();
+        j.commentsCount = inc.commentsCount;
+        j.uniqueEmailsCount = inc.uniqueEmailsCount;
+        j.enrichedAt = inc.enrichedAt();
+        j.createdAt = inc.createdAt();
+        return j;
+    }
+}
@@ -0,0 +1,397 @@
+package incident;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// Parse throughput of Incident.fromNdjson (one pass over the UTF-8 bytes with
+// JsonMini.ObjectReader) against the previous decode + per-key lookup, kept below as Legacy:
+// indexOf of every key, then a copy of the rest of the line. Lines come from an NDJSON file or
+// from DatasetGen; both parsers must agree on every line before anything is timed.
+//
+// --array reads one JSON array of incidents the way Importer and Enricher get their responses:
+// legacy holds the whole text and splitTopLevelObjects' copy of every element, stream uses
+// JsonMini.ArrayReader. One parser per run, so the peak heap reported is that parser's own;
+// run it under a small -Xmx to see which one fits. --writeArray produces such a file.
+//
+// --write times serialization instead: the old Incident.toJson (LinkedHashMap + JsonMini.obj,
+// then getBytes) against Incident.writeJson into a reused JsonMini.ByteWriter, after checking
+// that both give the same bytes.
+//
+// Lives in the bench module next to the JMH benchmarks, which use Legacy as their baseline:
+//
+//   java -cp target/benchmarks.jar incident.JsonBench [--in file.ndjson] [--count 100000] [--bodyWords 40] [--rounds 5] [--write]
+//   java -cp target/benchmarks.jar incident.JsonBench --writeArray arr.json [--count 100000] [--bodyWords 40]
+//   java -Xmx64m -cp target/benchmarks.jar incident.JsonBench --array arr.json --parser legacy|stream
+public class JsonBench {
+
+    public static void main(String[] args) throws IOException {
+        Path in = null;
+        int count = 100_000;
+        int bodyWords = 40;
+        int rounds = 5;
+        Path writeArray = null, array = null;
+        String parser = "stream";
+        boolean write = false;
+        for (int i = 0; i < args.length; i++) {
+            if ("--in".equals(args[i]) && i + 1 < args.length) in = Paths.get(args[++i]);
+            else if ("--count".equals(args[i]) && i + 1 < args.length) count = Integer.parseInt(args[++i]);
+            else if ("--bodyWords".equals(args[i]) && i + 1 < args.length) bodyWords = Integer.parseInt(args[++i]);
+            else if ("--rounds".equals(args[i]) && i + 1 < args.length) rounds = Integer.parseInt(args[++i]);
+            else if ("--writeArray".equals(args[i]) && i + 1 < args.length) writeArray = Paths.get(args[++i]);
+            else if ("--array".equals(args[i]) && i + 1 < args.length) array = Paths.get(args[++i]);
+            else if ("--parser".equals(args[i]) && i + 1 < args.length) parser = args[++i];
+            else if ("--write".equals(args[i])) write = true;
+        }
+        if (writeArray != null) {
+            writeArray(writeArray, count, bodyWords);
+            return;
+        }
+        if (array != null) {
+            readArray(array, parser);
+            return;
+        }
+
+        String[] text = in != null ? readLines(in) : generate(count, bodyWords);
+        byte[][] lines = new byte[text.length][];
+        long bytes = 0;
+        for (int i = 0; i < text.length; i++) {
+            lines[i] = text[i].getBytes(StandardCharsets.UTF_8);
+            bytes += lines[i].length + 1;
+        }
+        System.out.printf("%d lines, %.1f MB, %.0f B/line%n", lines.length, bytes / 1e6, (double) bytes / lines.length);
+
+        if (write) {
+            Incident[] incs = new Incident[lines.length];
+            for (int i = 0; i < lines.length; i++) incs[i] = onePass(lines[i]);
+            checkWriters(incs);
+            JsonMini.ByteWriter w = new JsonMini.ByteWriter(1024);
+            race("incidents", incs.length, bytes, rounds,
+                    "legacy", () -> {
+                        long sink = 0;
+                        for (Incident inc : incs) sink += Legacy.toJson(inc).getBytes(StandardCharsets.UTF_8).length;
+                        return sink;
+                    },
+                    "direct", () -> {
+                        long sink = 0;
+                        for (Incident inc : incs) {
+                            inc.writeJson(w.reset());
+                            sink += w.size();
+                        }
+                        return sink;
+                    });
+            return;
+        }
+
+        for (byte[] l : lines) {
+            String a = legacy(l).toJson(), b = onePass(l).toJson();
+            if (!a.equals(b)) throw new IllegalStateException("parsers disagree on " + new String(l, StandardCharsets.UTF_8));
+        }
+        race("lines", lines.length, bytes, rounds,
+                "legacy", () -> {
+                    long sink = 0;
+                    for (byte[] l : lines) sink += legacy(l).id;
+                    return sink;
+                },
+                "onepass", () -> {
+                    long sink = 0;
+                    for (byte[] l : lines) sink += onePass(l).id;
+                    return sink;
+                });
+    }
+
+    private interface Op {
+        long run(); // result only keeps the work from being optimized away
+    }
+
+    // Alternating rounds of a and b over n items; reports throughput and heap allocated per item.
+    private static void race(String unit, long n, long bytes, int rounds, String nameA, Op a, String nameB, Op b) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        String[] names = {nameA, nameB};
+        Op[] ops = {a, b};
+        double[] best = new double[2];
+        long sink = 0;
+        System.out.printf("%-8s %6s %12s %10s %10s%n", "", "round", unit + "/s", "MB/s", "B alloc/" + unit.charAt(0));
+        for (int r = 1; r <= rounds; r++) {
+            for (int p = 0; p < 2; p++) {
+                long alloc0 = threads.getCurrentThreadAllocatedBytes();
+                long t0 = System.nanoTime();
+                sink += ops[p].run();
+                double sec = (System.nanoTime() - t0) / 1e9;
+                long alloc = threads.getCurrentThreadAllocatedBytes() - alloc0;
+                best[p] = Math.max(best[p], n / sec);
+                System.out.printf("%-8s %6d %12.0f %10.1f %10.0f%n", names[p], r, n / sec, bytes / 1e6 / sec, (double) alloc / n);
+            }
+        }
+        if (sink == 42) System.out.print("");
+        System.out.printf("best: %s %.0f %s/s, %s %.0f %s/s, %.2fx%n", nameA, best[0], unit, nameB, best[1], unit, best[1] / best[0]);
+    }
+
+    // The direct writer must produce exactly the bytes of the old LinkedHashMap/JsonMini.obj path,
+    // on the data and on strings that need escaping or multi-byte UTF-8.
+    private static void checkWriters(Incident[] incs) {
+        List<Incident> cases = new ArrayList<>(Arrays.asList(incs));
+        String[] odd = {"", "q\"uote\\back/slash", "tab\tcr\rnl\n", "ctl\u0001\u001f\u007f", "é ß ключ 漢字",
+                "pair \ud83d\ude00 end", "lone \ud83d end", "lone \ude00", "\ud83d"};
+        for (int i = 0; i < odd.length; i++) {
+            Incident inc = new Incident();
+            inc.id = i % 2 == 0 ? Integer.MIN_VALUE + i : -i;
+            inc.title = odd[i];
+            inc.body = odd[odd.length - 1 - i];
+            inc.commentsCount = i == 3 ? null : Integer.MAX_VALUE - i;
+            inc.createdAt = odd[(i + 3) % odd.length];
+            cases.add(inc);
+        }
+        cases.add(new Incident());
+        Incident onlyCounter = new Incident();
+        onlyCounter.uniqueEmailsCount = 0;
+        cases.add(onlyCounter);
+        for (Incident inc : cases) {
+            byte[] old = Legacy.toJson(inc).getBytes(StandardCharsets.UTF_8);
+            JsonMini.ByteWriter w = new JsonMini.ByteWriter(16);
+            inc.writeJson(w);
+            if (!Arrays.equals(old, w.toByteArray()) || !Arrays.equals(old, inc.toJsonBytes()))
+                throw new IllegalStateException("writers disagree on " + Legacy.toJson(inc));
+        }
+        System.out.println("byte-identical on " + cases.size() + " incidents");
+    }
+
+    // Both start from the UTF-8 bytes of a line, as NdjsonLoader and the log replay do: the
+    // legacy path decodes the whole line first, the reader parses the bytes in place.
+    private static Incident legacy(byte[] line) {
+        return Legacy.fromNdjson(new String(line, StandardCharsets.UTF_8));
+    }
+
+    private static Incident onePass(byte[] line) {
+        return Incident.fromNdjson(line, 0, line.length);
+    }
+
+    private static void writeArray(Path out, int count, int bodyWords) throws IOException {
+        try (BufferedWriter w = Files.newBufferedWriter(out, StandardCharsets.UTF_8)) {
+            w.write('[');
+            String[] lines = generate(count, bodyWords);
+            for (int i = 0; i < lines.length; i++) {
+                if (i > 0) w.write(",\n");
+                w.write(lines[i]);
+            }
+            w.write(']');
+        }
+        System.out.printf("%s: %d elements, %.1f MB%n", out, count, Files.size(out) / 1e6);
+    }
+
+    private static void readArray(Path file, String parser) throws IOException {
+        long t0 = System.nanoTime();
+        long elements = 0, ids = 0;
+        if ("legacy".equals(parser)) {
+            for (String obj : Legacy.splitTopLevelObjects(Files.readString(file))) {
+                ids += Legacy.getIntOrNull(obj, "id");
+                elements++;
+            }
+        } else {
+            try (JsonMini.ArrayReader arr = new JsonMini.ArrayReader(Files.newInputStream(file))) {
+                while (arr.next()) {
+                    ids += Incident.fromNdjson(arr.buf(), arr.from(), arr.to()).id;
+                    elements++;
+                }
+            }
+        }
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+        }
+        System.out.printf("%s: %d elements (id sum %d), %.1f MB in %d ms, peak heap %.1f MB (-Xmx %.0f MB)%n",
+                parser, elements, ids, Files.size(file) / 1e6, (System.nanoTime() - t0) / 1_000_000,
+                peak / 1e6, Runtime.getRuntime().maxMemory() / 1e6);
+    }
+
+    private static String[] readLines(Path in) throws IOException {
+        List<String> out = new ArrayList<>();
+        for (String l : Files.readAllLines(in, StandardCharsets.UTF_8)) {
+            if (!l.isBlank()) out.add(l);
+        }
+        return out.toArray(new String[0]);
+    }
+
+    private static String[] generate(int count, int bodyWords) {
+        DatasetGen.Zipf words = new DatasetGen.Zipf(50_000, 1.0);
+        SplittableRandom rnd = new SplittableRandom(42);
+        String[] out = new String[count];
+        for (int i = 0; i < count; i++) out[i] = DatasetGen.incident(i + 1, rnd, words, 6, bodyWords).toJson();
+        return out;
+    }
+
+    // Incident.fromNdjson/toJson and the JsonMini helpers as they were before ObjectReader,
+    // ArrayReader and ByteWriter.
+    static final class Legacy {
+
+        static String toJson(Incident inc) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            String title = inc.title(), body = inc.body(), importedAt = inc.importedAt(), enrichedAt = inc.enrichedAt(),
+                    createdAt = inc.createdAt();
+            if (inc.id != null) m.put("id", inc.id);
+            if (title != null) m.put("title", title);
+            if (body != null) m.put("body", body);
+            if (inc.userId != null) m.put("userId", inc.userId);
+            if (importedAt != null) m.put("importedAt", importedAt);
+            if (inc.commentsCount != null) m.put("commentsCount", inc.commentsCount);
+            if (inc.uniqueEmailsCount != null) m.put("uniqueEmailsCount", inc.uniqueEmailsCount);
+            if (enrichedAt != null) m.put("enrichedAt", enrichedAt);
+            if (createdAt != null) m.put("createdAt", createdAt);
+
+            StringBuilder sb = new StringBuilder();
+            sb.append("{");
+            boolean first = true;
+            for (Map.Entry<String, Object> e : m.entrySet()) {
+                if (!first) sb.append(",");
+                first = false;
+                sb.append("\"").append(escape(e.getKey())).append("\":");
+                Object o = e.getValue();
+                sb.append(o instanceof Number ? String.valueOf(o) : "\"" + escape(String.valueOf(o)) + "\"");
+            }
+            sb.append("}");
+            return sb.toString();
+        }
+
+        private static String escape(String s) {
+            StringBuilder sb = new StringBuilder(s.length() + 16);
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                switch (c) {
+                    case '\\' -> sb.append("\\\\");
+                    case '"' -> sb.append("\\\"");
+                    case '\n' -> sb.append("\\n");
+                    case '\r' -> sb.append("\\r");
+                    case '\t' -> sb.append("\\t");
+                    default -> sb.append(c);
+                }
+            }
+            return sb.toString();
+        }
+
+        static List<String> splitTopLevelObjects(String jsonArray) {
+            String s = jsonArray.trim();
+            if (!s.startsWith("[") || !s.endsWith("]")) throw new IllegalArgumentException("Expected JSON array");
+            s = s.substring(1, s.length() - 1).trim();
+            List<String> out = new ArrayList<>();
+            int depth = 0;
+            boolean inStr = false, esc = false;
+            int start = -1;
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (inStr) {
+                    if (esc) esc = false;
+                    else if (c == '\\') esc = true;
+                    else if (c == '"') inStr = false;
+                    continue;
+                }
+                if (c == '"') {
+                    inStr = true;
+                } else if (c == '{') {
+                    if (depth == 0) start = i;
+                    depth++;
+                } else if (c == '}') {
+                    depth--;
+                    if (depth == 0 && start >= 0) {
+                        out.add(s.substring(start, i + 1));
+                        start = -1;
+                    }
+                }
+            }
+            return out;
+        }
+
+        static Incident fromNdjson(String line) {
+            Incident inc = new Incident();
+            inc.id = getIntOrNull(line, "id");
+            inc.userId = getIntOrNull(line, "userId");
+            inc.title = getStringOrNull(line, "title");
+            inc.body = getStringOrNull(line, "body");
+            inc.importedAt = getStringOrNull(line, "importedAt");
+            inc.commentsCount = getIntOrNull(line, "commentsCount");
+            inc.uniqueEmailsCount = getIntOrNull(line, "uniqueEmailsCount");
+            inc.enrichedAt = getStringOrNull(line, "enrichedAt");
+            inc.createdAt = getStringOrNull(line, "createdAt");
+            inc.deleted = Boolean.TRUE.equals(getBooleanOrNull(line, "deleted"));
+            return inc;
+        }
+
+        static Integer getIntOrNull(String obj, String key) {
+            String raw = findRawValue(obj, key);
+            if (raw == null) return null;
+            raw = raw.trim();
+            int i = 0;
+            if (raw.startsWith("-")) i++;
+            while (i < raw.length() && Character.isDigit(raw.charAt(i))) i++;
+            String num = raw.substring(0, i);
+            if (num.isEmpty() || "-".equals(num)) return null;
+            return Integer.parseInt(num);
+        }
+
+        static String getStringOrNull(String obj, String key) {
+            String raw = findRawValue(obj, key);
+            if (raw == null) return null;
+            raw = raw.trim();
+            if (!raw.startsWith("\"")) return null;
+            int end = findStringEnd(raw);
+            if (end < 0) throw new IllegalArgumentException("Bad JSON string");
+            return unescape(raw.substring(0, end + 1));
+        }
+
+        static Boolean getBooleanOrNull(String obj, String key) {
+            String raw = findRawValue(obj, key);
+            if (raw == null) return null;
+            if (raw.startsWith("true")) return Boolean.TRUE;
+            if (raw.startsWith("false")) return Boolean.FALSE;
+            return null;
+        }
+
+        private static String findRawValue(String obj, String key) {
+            String needle = "\"" + key + "\"";
+            int k = obj.indexOf(needle);
+            if (k < 0) return null;
+            int colon = obj.indexOf(':', k + needle.length());
+            if (colon < 0) return null;
+            int i = colon + 1;
+            while (i < obj.length() && Character.isWhitespace(obj.charAt(i))) i++;
+            return obj.substring(i);
+        }
+
+        private static int findStringEnd(String s) {
+            boolean esc = false;
+            for (int i = 1; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (esc) esc = false;
+                else if (c == '\\') esc = true;
+                else if (c == '"') return i;
+            }
+            return -1;
+        }
+
+        private static String unescape(String token) {
+            String s = token.substring(1, token.length() - 1);
+            StringBuilder sb = new StringBuilder(s.length());
+            boolean esc = false;
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (!esc) {
+                    if (c == '\\') esc = true;
+                    else sb.append(c);
+                } else {
+                    esc = false;
+                    switch (c) {
+                        case 'n' -> sb.append('\n');
+                        case 'r' -> sb.append('\r');
+                        case 't' -> sb.append('\t');
+                        default -> sb.append(c);
+                    }
+                }
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package incident;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// One NDJSON line into an incident: the pre-ObjectReader getters (legacy), ObjectReader on a
+// String, ObjectReader on the UTF-8 bytes in place (what NdjsonLoader does), Jackson databind.
+// Scores are per line.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParseBench {
+
+    static final int LINES = 1024;
+
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    private byte[][] bytes;
+    private String[] strings;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Setup
+    public void setup() {
+        bytes = Payloads.lines(Payloads.incidents(size, LINES));
+        strings = Payloads.strings(bytes);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void legacy(Blackhole bh) {
+        for (String s : strings) bh.consume(JsonBench.Legacy.fromNdjson(s));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void objectReaderString(Blackhole bh) {
+        for (String s : strings) bh.consume(Incident.fromNdjson(s));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void objectReaderBytes(Blackhole bh) {
+        for (byte[] b : bytes) bh.consume(Incident.fromNdjson(b, 0, b.length));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void jackson(Blackhole bh) throws IOException {
+        for (byte[] b : bytes) bh.consume(mapper.readValue(b, IncidentJson.class));
+    }
+}
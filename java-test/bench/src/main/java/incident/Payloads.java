@@ -0,0 +1,56 @@
+package incident;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+
+// DatasetGen incidents for the benchmarks; the same size and count always give the same bytes.
+//   small:  ~3 title words, ~10 body words (~250 B a line)
+//   medium: ~6 title words, ~40 body words (~370 B), the DatasetGen default
+//   large:  ~8 title words, ~400 body words (~2 KB)
+final class Payloads {
+
+    static final String SIZES = "small,medium,large";
+
+    private Payloads() {
+    }
+
+    static Incident[] incidents(String size, int count) {
+        int titleWords, bodyWords;
+        switch (size) {
+            case "small" -> { titleWords = 3; bodyWords = 10; }
+            case "medium" -> { titleWords = 6; bodyWords = 40; }
+            case "large" -> { titleWords = 8; bodyWords = 400; }
+            default -> throw new IllegalArgumentException("size: " + size);
+        }
+        DatasetGen.Zipf words = new DatasetGen.Zipf(50_000, 1.0);
+        SplittableRandom rnd = new SplittableRandom(42);
+        Incident[] out = new Incident[count];
+        for (int i = 0; i < count; i++) out[i] = DatasetGen.incident(i + 1, rnd, words, titleWords, bodyWords);
+        return out;
+    }
+
+    static byte[][] lines(Incident[] incs) {
+        byte[][] out = new byte[incs.length][];
+        for (int i = 0; i < incs.length; i++) out[i] = incs[i].toJson().getBytes(StandardCharsets.UTF_8);
+        return out;
+    }
+
+    static String[] strings(byte[][] lines) {
+        String[] out = new String[lines.length];
+        for (int i = 0; i < lines.length; i++) out[i] = new String(lines[i], StandardCharsets.UTF_8);
+        return out;
+    }
+
+    // [obj,obj,...] as the incidents API returns it
+    static byte[] array(Incident[] incs) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write('[');
+        for (int i = 0; i < incs.length; i++) {
+            if (i > 0) out.write(',');
+            out.writeBytes(incs[i].toJsonBytes());
+        }
+        out.write(']');
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,91 @@
+package incident;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Server start from each storage format, for the same incidents: incidents_enriched.ndjson
+// through NdjsonLoader plus building the word and trigram indexes (what a start without a
+// snapshot does), and IncidentSnapshot.load, which brings the postings with it. The files sit
+// in a temp directory and stay in the page cache, so this is parse/build cost, not disk.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StorageBench {
+
+    @Param({"20000"})
+    public int count;
+
+    @Param({"medium"})
+    public String size;
+
+    private Path dir;
+    private Path ndjson;
+    private Path snapshot;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("incident-bench");
+        ndjson = dir.resolve("incidents_enriched.ndjson");
+        snapshot = dir.resolve("snapshot.bin");
+
+        List<Incident> incs = Arrays.asList(Payloads.incidents(size, count));
+        JsonMini.ByteWriter w = new JsonMini.ByteWriter(1024);
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(ndjson), 1 << 16)) {
+            for (Incident inc : incs) {
+                w.reset();
+                inc.writeJson(w);
+                w.raw('\n');
+                w.writeTo(out);
+            }
+        }
+        InvertedIndex index = new InvertedIndex();
+        TrigramIndex trigrams = new TrigramIndex();
+        index.addAll(incs);
+        trigrams.addAll(incs);
+        IncidentSnapshot.write(snapshot, new IncidentSnapshot.Header(Files.size(ndjson), 0, 0, count + 1),
+                incs, index, trigrams.postings());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+        }
+    }
+
+    @Benchmark
+    public IntObjectMap<Incident> ndjsonAndIndex() throws IOException {
+        NdjsonLoader.Result res = NdjsonLoader.load(ndjson, 0, ForkJoinPool.commonPool());
+        IntObjectMap<Incident> store = new IntObjectMap<>();
+        List<Incident> all = new ArrayList<>((int) res.loaded);
+        for (List<Incident> chunk : res.chunks) {
+            for (Incident inc : chunk) store.put(inc.id, inc);
+            all.addAll(chunk);
+        }
+        new InvertedIndex().addAll(all);
+        new TrigramIndex().addAll(all);
+        return store;
+    }
+
+    @Benchmark
+    public IntObjectMap<Incident> snapshot() throws IOException {
+        IntObjectMap<Incident> store = new IntObjectMap<>();
+        IncidentSnapshot.load(snapshot, store, new InvertedIndex(), new TrigramIndex().postings(), null);
+        return store;
+    }
+}
@@ -0,0 +1,48 @@
+package incident;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// InvertedIndex.tokens, the tokenizer behind indexing and search, on titles and bodies.
+// Scores are per text.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TokenizeBench {
+
+    static final int COUNT = 1024;
+
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    private String[] titles;
+    private String[] bodies;
+
+    @Setup
+    public void setup() {
+        Incident[] incs = Payloads.incidents(size, COUNT);
+        titles = new String[COUNT];
+        bodies = new String[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            titles[i] = incs[i].title();
+            bodies[i] = incs[i].body();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void title(Blackhole bh) {
+        for (String t : titles) bh.consume(InvertedIndex.tokens(t));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void body(Blackhole bh) {
+        for (String b : bodies) bh.consume(InvertedIndex.tokens(b));
+    }
+}
@@ -0,0 +1,66 @@
+package incident;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// One incident to UTF-8 JSON: the map-based legacy toJson, Incident.toJson (String),
+// writeJson into a reused ByteWriter (Importer, Enricher, the WAL), Jackson writeValueAsBytes.
+// Nothing goes through the toJsonBytes cache. Scores are per incident.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WriteBench {
+
+    static final int COUNT = 1024;
+
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    private Incident[] incidents;
+    private IncidentJson[] dtos;
+    private final JsonMini.ByteWriter writer = new JsonMini.ByteWriter(1024);
+    private final ObjectWriter jackson = new ObjectMapper().writerFor(IncidentJson.class);
+
+    @Setup
+    public void setup() {
+        incidents = Payloads.incidents(size, COUNT);
+        dtos = new IncidentJson[COUNT];
+        for (int i = 0; i < COUNT; i++) dtos[i] = IncidentJson.of(incidents[i]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void legacy(Blackhole bh) {
+        for (Incident inc : incidents) bh.consume(JsonBench.Legacy.toJson(inc).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void toJson(Blackhole bh) {
+        for (Incident inc : incidents) bh.consume(inc.toJson());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void byteWriter(Blackhole bh) {
+        for (Incident inc : incidents) {
+            writer.reset();
+            inc.writeJson(writer);
+            bh.consume(writer.size());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void jackson(Blackhole bh) throws Exception {
+        for (IncidentJson j : dtos) bh.consume(jackson.writeValueAsBytes(j));
+    }
+}
@@ -0,0 +1,51 @@
+package incident;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class IncidentWalTest {
+
+    @TempDir
+    Path dir;
+
+    // The fsync timer wakes the writer with nothing queued; the writer must survive it.
+    @Test
+    void periodicAppendAfterIdleFsyncTick() throws Exception {
+        Path log = dir.resolve("local_incidents.ndjson");
+        try (IncidentWal wal = new IncidentWal(log, IncidentWal.Durability.PERIODIC, 20)) {
+            long first = wal.append(bytes("{\"id\":1}\n")).get(5, TimeUnit.SECONDS);
+            Thread.sleep(200); // several idle ticks
+            long second = wal.append(bytes("{\"id\":2}\n")).get(5, TimeUnit.SECONDS);
+            assertEquals(first + 9, second);
+            Thread.sleep(100);
+            long third = wal.append(bytes("{\"id\":3}\n")).get(5, TimeUnit.SECONDS);
+            assertEquals(second + 9, third);
+        }
+        assertEquals("{\"id\":1}\n{\"id\":2}\n{\"id\":3}\n", Files.readString(log));
+    }
+
+    @Test
+    void periodicReplaceAfterIdleFsyncTick() throws Exception {
+        Path log = dir.resolve("local_incidents.ndjson");
+        try (IncidentWal wal = new IncidentWal(log, IncidentWal.Durability.PERIODIC, 20)) {
+            long end = wal.append(bytes("{\"id\":1}\n")).get(5, TimeUnit.SECONDS);
+            Thread.sleep(100);
+            Path compacted = dir.resolve("compacted.ndjson");
+            Files.write(compacted, bytes("{\"id\":1}\n"));
+            assertEquals(9L, wal.replace(compacted, end).get(5, TimeUnit.SECONDS));
+            assertEquals(18L, wal.append(bytes("{\"id\":2}\n")).get(5, TimeUnit.SECONDS));
+        }
+        assertEquals("{\"id\":1}\n{\"id\":2}\n", Files.readString(log));
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
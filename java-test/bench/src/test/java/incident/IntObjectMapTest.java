@@ -0,0 +1,85 @@
+package incident;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntObjectMapTest {
+
+    @Test
+    void putGetRemoveAcrossResizes() {
+        IntObjectMap<String> map = new IntObjectMap<>();
+        for (int i = 0; i < 100_000; i++) assertNull(map.put(i * 7, "v" + i));
+        assertEquals(100_000, map.size());
+        for (int i = 0; i < 100_000; i += 2) assertEquals("v" + i, map.remove(i * 7));
+        assertEquals(50_000, map.size());
+        for (int i = 0; i < 100_000; i++) assertEquals(i % 2 == 0 ? null : "v" + i, map.get(i * 7));
+        assertEquals("v1", map.put(7, "x"));
+        assertEquals(50_000, map.keys().length);
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(7));
+    }
+
+    // Writers own disjoint keys, so each one's reference map is exact; readers run lock-free
+    // alongside and must never see a value under another key.
+    @Test
+    void concurrentWritersAndReaders() throws Exception {
+        IntObjectMap<Integer> map = new IntObjectMap<>();
+        int writers = 4;
+        int ops = 200_000;
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        @SuppressWarnings("unchecked")
+        Map<Integer, Integer>[] expected = new Map[writers];
+
+        Thread[] threads = new Thread[writers + 2];
+        for (int w = 0; w < writers; w++) {
+            int id = w;
+            expected[w] = new HashMap<>();
+            threads[w] = new Thread(() -> {
+                SplittableRandom rnd = new SplittableRandom(id);
+                for (int i = 0; i < ops; i++) {
+                    int key = rnd.nextInt(50_000) * writers + id;
+                    if (rnd.nextInt(4) == 0) {
+                        assertEquals(expected[id].remove(key), map.remove(key));
+                    } else {
+                        assertEquals(expected[id].put(key, key), map.put(key, key));
+                    }
+                }
+            });
+        }
+        for (int r = writers; r < threads.length; r++) {
+            threads[r] = new Thread(() -> {
+                SplittableRandom rnd = new SplittableRandom();
+                while (!done.get()) {
+                    int key = rnd.nextInt(200_000);
+                    Integer v = map.get(key);
+                    if (v != null && v != key) throw new AssertionError("key " + key + " -> " + v);
+                }
+            });
+        }
+        for (Thread t : threads) {
+            t.setUncaughtExceptionHandler((th, e) -> failure.compareAndSet(null, e));
+            t.start();
+        }
+        for (int w = 0; w < writers; w++) threads[w].join();
+        done.set(true);
+        for (int r = writers; r < threads.length; r++) threads[r].join();
+        assertNull(failure.get());
+
+        int total = 0;
+        for (Map<Integer, Integer> m : expected) {
+            total += m.size();
+            for (Map.Entry<Integer, Integer> e : m.entrySet()) assertEquals(e.getValue(), map.get(e.getKey()));
+        }
+        assertEquals(total, map.size());
+        assertEquals(total, map.keys().length);
+    }
+}
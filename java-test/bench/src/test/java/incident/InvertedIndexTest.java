@@ -0,0 +1,48 @@
+package incident;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InvertedIndexTest {
+
+    private static final String[] WORDS = {"disk", "full", "timeout", "db", "error", "node", "rare"};
+
+    // The lazy cursor yields exactly the ids search() returns after the given id, for every mode.
+    @Test
+    void cursorMatchesSearch() {
+        SplittableRandom rnd = new SplittableRandom(7);
+        InvertedIndex index = new InvertedIndex();
+        for (int id = 1; id <= 5_000; id++) {
+            Incident inc = new Incident();
+            inc.id = id * 3;
+            inc.title = word(rnd) + " " + word(rnd);
+            inc.body = word(rnd) + " " + (rnd.nextInt(50) == 0 ? "rare" : word(rnd));
+            index.add(inc);
+        }
+
+        for (int q = 0; q < 300; q++) {
+            List<String> toks = new ArrayList<>();
+            for (int t = 1 + rnd.nextInt(3); t > 0; t--) toks.add(rnd.nextInt(20) == 0 ? "missing" : word(rnd));
+            InvertedIndex.Mode mode = InvertedIndex.Mode.values()[rnd.nextInt(InvertedIndex.Mode.values().length)];
+            int after = rnd.nextInt(16_000) - 10;
+
+            List<Integer> expected = new ArrayList<>();
+            for (int id : index.search(toks, mode)) if (id > after) expected.add(id);
+            List<Integer> actual = new ArrayList<>();
+            PrimitiveIterator.OfInt it = index.cursor(toks, mode, after);
+            while (it.hasNext()) actual.add(it.nextInt());
+            assertEquals(expected, actual, mode + " " + toks + " after " + after);
+        }
+        assertFalse(index.cursor(List.of("disk"), InvertedIndex.Mode.AND, Integer.MAX_VALUE).hasNext());
+    }
+
+    private static String word(SplittableRandom rnd) {
+        return WORDS[rnd.nextInt(WORDS.length - 1)];
+    }
+}
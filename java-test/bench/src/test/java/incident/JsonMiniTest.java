@@ -0,0 +1,34 @@
+package incident;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonMiniTest {
+
+    private static final byte[] A = JsonMini.ByteWriter.name("a"), B = JsonMini.ByteWriter.name("b");
+
+    // The ',' depends on the open object only, not on whatever byte was written last.
+    @Test
+    void commasFollowNestingNotPreviousByte() {
+        JsonMini.ByteWriter w = new JsonMini.ByteWriter(16);
+        w.beginObject().key(A).string("ends with {").key(B).beginObject().key(A).number(1).endObject().endObject();
+        w.raw('\n');
+        w.beginObject().key(A).beginObject().endObject().key(B).string("[").endObject();
+        assertEquals("{\"a\":\"ends with {\",\"b\":{\"a\":1}}\n{\"a\":{},\"b\":\"[\"}", w.toString());
+    }
+
+    @Test
+    void recordsInOneWriterStartFresh() {
+        Incident inc = new Incident();
+        inc.id = 7;
+        inc.title = "{";
+        JsonMini.ByteWriter w = new JsonMini.ByteWriter(16);
+        inc.writeJson(w);
+        w.raw('\n');
+        inc.writeJson(w);
+        assertEquals("{\"id\":7,\"title\":\"{\"}\n{\"id\":7,\"title\":\"{\"}", w.toString());
+        assertThrows(IllegalStateException.class, () -> w.key(A));
+        assertThrows(IllegalStateException.class, w::endObject);
+    }
+}
@@ -0,0 +1,42 @@
+package incident;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PartitionTest {
+
+    private static final int IDS = 400_000;
+
+    // Every partition gets its share of the ids, and the share still spreads over the
+    // partition's IntObjectMap instead of crowding into a few home slots.
+    @Test
+    void partitionStoresStayWellSpread() {
+        for (int count : new int[]{2, 3, 4, 8, 16}) {
+            @SuppressWarnings("unchecked")
+            IntObjectMap<Integer>[] stores = new IntObjectMap[count];
+            for (int p = 0; p < count; p++) stores[p] = new IntObjectMap<>();
+            for (int id = 1; id <= IDS; id++) stores[Partition.owner(id, count)].put(id, id);
+
+            for (int p = 0; p < count; p++) {
+                int size = stores[p].size();
+                assertEquals(IDS / (double) count, size, IDS * 0.02 / count, count + " partitions, #" + p + " size");
+                double probe = stores[p].averageProbeLength();
+                // the whole id range probes ~0.25 here; ids sharing low hash bits go past 1.5 at 8
+                assertTrue(probe < 1.0, count + " partitions, #" + p + ": average probe " + probe);
+            }
+        }
+    }
+
+    @Test
+    void ownerIsInRangeAndStable() {
+        for (int count = 1; count <= 17; count++) {
+            for (int id : new int[]{Integer.MIN_VALUE, -1, 0, 1, 42, Integer.MAX_VALUE}) {
+                int o = Partition.owner(id, count);
+                assertTrue(o >= 0 && o < count);
+                assertEquals(o, Partition.owner(id, count));
+                assertEquals(o == 0, new Partition(0, count).owns(id));
+            }
+        }
+    }
+}
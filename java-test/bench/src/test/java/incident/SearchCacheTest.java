@@ -0,0 +1,68 @@
+package incident;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchCacheTest {
+
+    private static SearchCache.Entry words(String key, String... terms) {
+        return new SearchCache.Entry(key, new byte[16], null, null, "\"" + key + "\"", false, false, Set.of(terms), null);
+    }
+
+    private static SearchCache.Entry substring(String key, String needle) {
+        return new SearchCache.Entry(key, new byte[16], null, null, "\"" + key + "\"", true, false, Set.of(), needle);
+    }
+
+    private static Incident incident(String title, String body) {
+        Incident inc = new Incident();
+        inc.id = 1;
+        inc.title = title;
+        inc.body = body;
+        return inc;
+    }
+
+    // An insert that is checked against an entry but does not change its result must not
+    // refresh it: the least recently *read* entry is still the one evicted next.
+    @Test
+    void invalidationScanDoesNotPromote() {
+        SearchCache cache = new SearchCache(3, 1 << 20);
+        AtomicLong version = new AtomicLong();
+        assertTrue(cache.put(words("alpha zeta", "alpha", "zeta"), version, 0));
+        assertTrue(cache.put(substring("~needle", "needle"), version, 0));
+        assertTrue(cache.put(words("gamma", "gamma"), version, 0));
+
+        cache.onInsert(incident("alpha", "no match here"));
+        assertEquals(0, cache.invalidations());
+
+        assertTrue(cache.put(words("delta", "delta"), version, 0));
+        assertNull(cache.get("alpha zeta"));
+        assertNotNull(cache.get("~needle"));
+        assertNotNull(cache.get("gamma"));
+        assertNotNull(cache.get("delta"));
+    }
+
+    @Test
+    void insertDropsOnlyAffectedEntries() {
+        SearchCache cache = new SearchCache(10, 1 << 20);
+        AtomicLong version = new AtomicLong();
+        cache.put(words("a b", "a", "b"), version, 0);
+        cache.put(new SearchCache.Entry("a|c", new byte[16], null, null, "\"x\"", false, true, Set.of("a", "c"), null), version, 0);
+        cache.put(substring("~ell", "ell"), version, 0);
+        cache.put(words("z", "z"), version, 0);
+
+        cache.onInsert(incident("A", "hello"));
+        assertEquals(2, cache.invalidations());
+        assertNotNull(cache.get("a b"));
+        assertNull(cache.get("a|c"));
+        assertNull(cache.get("~ell"));
+        assertNotNull(cache.get("z"));
+
+        cache.onUpdate(incident("a", "b"), null);
+        assertNull(cache.get("a b"));
+        assertEquals(1, cache.size());
+    }
+}
@@ -0,0 +1,269 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Asynchronous logger shared by IncidentServer, Enricher and Importer.
+// Callers put events into a lock-free bounded ring buffer; one background thread per log file
+// drains it in batches into a single open FileChannel.
+//
+// Tuning via system properties:
+//   log.capacity   ring size (rounded up to a power of two), default 65536
+//   log.policy     drop | block when the ring is full, default block
+//   log.maxBytes   rotate when the file grows past this size, default 64 MiB (0 = off)
+//   log.maxAgeMin  rotate when the file is older than this, default 1440 (0 = off); the age
+//                  counts from the file's first event, so it carries over restarts
+//
+// Rotated files get a ".yyyyMMdd-HHmmss" suffix, with "-1", "-2", ... added when that name is
+// taken; an archive is never overwritten.
+public class AsyncLog implements Closeable {
+
+    public enum Policy { DROP, BLOCK }
+
+    private static final ConcurrentHashMap<String, AsyncLog> LOGS = new ConcurrentHashMap<>();
+    private static final DateTimeFormatter ROTATE_SUFFIX =
+            DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss").withZone(ZoneOffset.UTC);
+    private static final int MAX_BATCH = 4096;
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(AsyncLog::closeAll, "log-shutdown"));
+    }
+
+    // Structured event; formatting happens on the drain thread, not on the caller's.
+    private static final class Event {
+        final Instant ts;
+        final String thread;
+        final String message;
+
+        Event(Instant ts, String thread, String message) {
+            this.ts = ts;
+            this.thread = thread;
+            this.message = message;
+        }
+    }
+
+    private final Path file;
+    private final Policy policy;
+    private final long maxBytes;
+    private final long maxAgeMillis;
+
+    // ring buffer (bounded MPSC, per-slot sequence numbers)
+    private final int mask;
+    private final AtomicReferenceArray<Event> slots;
+    private final AtomicLongArray seqs;
+    private final AtomicLong tail = new AtomicLong();
+    private long head; // drain thread only
+
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean closed = false;
+    private volatile boolean sleeping = false;
+    private final Thread drainer;
+
+    private FileChannel ch;
+    private long fileBytes;
+    private long startedAt; // when the current file was started, see fileStart
+
+    // Returns the logger for logs/<fileName>, starting it on first use.
+    public static AsyncLog get(String fileName) {
+        return LOGS.computeIfAbsent(fileName, n -> new AsyncLog(Paths.get("logs", n)));
+    }
+
+    public static void closeAll() {
+        for (AsyncLog l : LOGS.values()) l.close();
+    }
+
+    private AsyncLog(Path file) {
+        this.file = file;
+        this.policy = Policy.valueOf(System.getProperty("log.policy", "block").toUpperCase(Locale.ROOT));
+        this.maxBytes = Long.getLong("log.maxBytes", 64L << 20);
+        this.maxAgeMillis = TimeUnit.MINUTES.toMillis(Long.getLong("log.maxAgeMin", 1440L));
+
+        int cap = Integer.highestOneBit(Math.max(2, Integer.getInteger("log.capacity", 1 << 16)) * 2 - 1);
+        this.mask = cap - 1;
+        this.slots = new AtomicReferenceArray<>(cap);
+        this.seqs = new AtomicLongArray(cap);
+        for (int i = 0; i < cap; i++) seqs.set(i, i);
+
+        this.drainer = new Thread(this::drainLoop, "log-" + file.getFileName());
+        this.drainer.setDaemon(true);
+        this.drainer.start();
+    }
+
+    public void log(Instant ts, String threadName, String message) {
+        Event e = new Event(ts, threadName, message);
+        while (!offer(e)) {
+            if (closed || policy == Policy.DROP) {
+                dropped.incrementAndGet();
+                return;
+            }
+            wakeDrainer();
+            Thread.onSpinWait();
+            LockSupport.parkNanos(50_000);
+        }
+        if (sleeping) wakeDrainer();
+    }
+
+    public long droppedCount() {
+        return dropped.get();
+    }
+
+    private boolean offer(Event e) {
+        while (true) {
+            long pos = tail.get();
+            int idx = (int) (pos & mask);
+            long dif = seqs.get(idx) - pos;
+            if (dif == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    slots.lazySet(idx, e);
+                    seqs.set(idx, pos + 1);
+                    return true;
+                }
+            } else if (dif < 0) {
+                return false; // full
+            }
+            // else another producer claimed this slot, retry with fresh tail
+        }
+    }
+
+    private Event poll() {
+        int idx = (int) (head & mask);
+        if (seqs.get(idx) != head + 1) return null;
+        Event e = slots.get(idx);
+        slots.lazySet(idx, null);
+        seqs.lazySet(idx, head + mask + 1);
+        head++;
+        return e;
+    }
+
+    private void wakeDrainer() {
+        LockSupport.unpark(drainer);
+    }
+
+    private void drainLoop() {
+        StringBuilder sb = new StringBuilder(8192);
+        while (true) {
+            int n = 0;
+            sb.setLength(0);
+            Event e;
+            while (n < MAX_BATCH && (e = poll()) != null) {
+                format(sb, e);
+                n++;
+            }
+            long d = dropped.getAndSet(0);
+            if (d > 0) format(sb, new Event(Instant.now(), Thread.currentThread().getName(),
+                    "WARN: dropped " + d + " log events (ring full)"));
+
+            if (sb.length() > 0) {
+                write(sb);
+                continue;
+            }
+            if (closed) break;
+
+            sleeping = true;
+            if (seqs.get((int) (head & mask)) != head + 1) {
+                sleeping = false;
+                continue;
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+            sleeping = false;
+        }
+        closeChannel();
+    }
+
+    private static void format(StringBuilder sb, Event e) {
+        DateTimeFormatter.ISO_INSTANT.formatTo(e.ts, sb);
+        sb.append(", ").append(e.thread).append(", ").append(e.message).append(System.lineSeparator());
+    }
+
+    private void write(CharSequence text) {
+        try {
+            if (ch == null) openChannel();
+            if (shouldRotate()) rotate();
+            ByteBuffer buf = StandardCharsets.UTF_8.encode(text.toString());
+            fileBytes += buf.remaining();
+            while (buf.hasRemaining()) ch.write(buf);
+        } catch (IOException ignored) { }
+    }
+
+    private boolean shouldRotate() {
+        return fileBytes > 0 && ((maxBytes > 0 && fileBytes >= maxBytes)
+                || (maxAgeMillis > 0 && System.currentTimeMillis() - startedAt >= maxAgeMillis));
+    }
+
+    private void openChannel() throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null) Files.createDirectories(dir);
+        ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileBytes = ch.size();
+        startedAt = fileBytes == 0 ? System.currentTimeMillis() : fileStart();
+    }
+
+    // Timestamp of the first event in the file, which every line starts with. Falls back to
+    // the creation time, which Linux file systems often report as the last modification.
+    private long fileStart() throws IOException {
+        long created = Files.readAttributes(file, BasicFileAttributes.class).creationTime().toMillis();
+        ByteBuffer head = ByteBuffer.allocate(64);
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (head.hasRemaining() && in.read(head) > 0) { }
+        }
+        String first = new String(head.array(), 0, head.position(), StandardCharsets.UTF_8);
+        int comma = first.indexOf(',');
+        if (comma < 0) return created;
+        try {
+            return Math.min(created, Instant.parse(first.substring(0, comma)).toEpochMilli());
+        } catch (DateTimeParseException e) {
+            return created;
+        }
+    }
+
+    private void rotate() throws IOException {
+        closeChannel();
+        String name = file.getFileName() + "." + ROTATE_SUFFIX.format(Instant.now());
+        Path rotated = file.resolveSibling(name);
+        for (int i = 1; ; i++) {
+            try {
+                Files.move(file, rotated);
+                break;
+            } catch (FileAlreadyExistsException e) {
+                rotated = file.resolveSibling(name + "-" + i); // rotated twice within a second
+            }
+        }
+        openChannel();
+    }
+
+    private void closeChannel() {
+        if (ch == null) return;
+        try {
+            ch.force(false);
+            ch.close();
+        } catch (IOException ignored) { }
+        ch = null;
+    }
+
+    // Stops accepting events, drains what is buffered and closes the file.
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        wakeDrainer();
+        try {
+            drainer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
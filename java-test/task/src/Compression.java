@@ -0,0 +1,152 @@
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Accept-Encoding negotiation for JSON responses: gzip or deflate (zlib) for bodies of at
+// least minBytes. Fresh bodies are compressed while they are streamed (chunked); bodies that
+// are cached anyway (single incidents, search cache entries) keep their compressed forms in
+// a Cached holder, so hot reads are not compressed again.
+// A compressed response gets a weak ETag, since its bytes differ from the identity form;
+// If-None-Match is compared weakly, so both forms revalidate against the same tag.
+public class Compression {
+
+    public enum Encoding {
+        GZIP("gzip"), DEFLATE("deflate");
+
+        final String token;
+
+        Encoding(String token) {
+            this.token = token;
+        }
+    }
+
+    // Compressed copies of one immutable body, built on first use.
+    public static final class Cached {
+        private volatile byte[] gzip;
+        private volatile byte[] deflate;
+
+        byte[] get(Encoding e, byte[] plain) {
+            byte[] b = e == Encoding.GZIP ? gzip : deflate;
+            if (b == null) {
+                b = compress(plain, e);
+                if (e == Encoding.GZIP) gzip = b;
+                else deflate = b;
+            }
+            return b;
+        }
+    }
+
+    private final int minBytes; // < 0: never compress
+
+    public Compression(int minBytes) {
+        this.minBytes = minBytes;
+    }
+
+    // Encoding for a response body of `size` bytes, or null for identity.
+    public Encoding choose(HttpExchange ex, long size) {
+        if (minBytes < 0 || size < minBytes) return null;
+        ex.getResponseHeaders().set("Vary", "Accept-Encoding");
+        return negotiate(ex.getRequestHeaders().getFirst("Accept-Encoding"));
+    }
+
+    // Highest q wins, gzip on ties; "*" covers codings not listed; q=0 refuses.
+    static Encoding negotiate(String header) {
+        if (header == null || header.isBlank()) return null;
+        double gzip = -1, deflate = -1, any = -1;
+        for (String part : header.split(",")) {
+            String[] p = part.split(";");
+            String name = p[0].trim().toLowerCase(Locale.ROOT);
+            double q = 1;
+            for (int i = 1; i < p.length; i++) {
+                String param = p[i].trim();
+                if (!param.startsWith("q=")) continue;
+                try { q = Double.parseDouble(param.substring(2)); }
+                catch (NumberFormatException nfe) { q = 0; }
+            }
+            switch (name) {
+                case "gzip": case "x-gzip": gzip = q; break;
+                case "deflate": deflate = q; break;
+                case "*": any = q; break;
+                default: break;
+            }
+        }
+        if (gzip < 0) gzip = any;
+        if (deflate < 0) deflate = any;
+        if (gzip <= 0 && deflate <= 0) return null;
+        return gzip >= deflate ? Encoding.GZIP : Encoding.DEFLATE;
+    }
+
+    public static byte[] compress(byte[] data, Encoding e) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+        try (OutputStream os = wrap(bos, e)) {
+            os.write(data);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe); // in-memory, does not happen
+        }
+        return bos.toByteArray();
+    }
+
+    public static OutputStream wrap(OutputStream os, Encoding e) throws IOException {
+        return e == Encoding.GZIP ? new GZIPOutputStream(os, 8192) : new DeflaterOutputStream(os);
+    }
+
+    // JSON body, compressed on the fly if the client accepts it.
+    public void writeJson(HttpExchange ex, int code, byte[] body) throws IOException {
+        try (OutputStream os = openJson(ex, code, body.length)) {
+            os.write(body);
+        }
+    }
+
+    // JSON body with cached compressed forms (cache may be null: compress on the fly).
+    public void writeJson(HttpExchange ex, int code, byte[] body, Cached cache) throws IOException {
+        if (cache == null) {
+            writeJson(ex, code, body);
+            return;
+        }
+        Encoding e = choose(ex, body.length);
+        byte[] out = e == null ? body : cache.get(e, body);
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        if (e != null) markEncoded(ex, e);
+        ex.sendResponseHeaders(code, out.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(out);
+        }
+    }
+
+    // Sends the headers for a JSON body of exactly size bytes and returns the stream to write
+    // it to. Identity responses have a fixed length; compressed ones are chunked and compressed
+    // as they are written.
+    public OutputStream openJson(HttpExchange ex, int code, long size) throws IOException {
+        Encoding e = choose(ex, size);
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        if (e == null) {
+            ex.sendResponseHeaders(code, size);
+            return ex.getResponseBody();
+        }
+        markEncoded(ex, e);
+        ex.sendResponseHeaders(code, 0);
+        return wrap(ex.getResponseBody(), e);
+    }
+
+    // Sends the headers for a JSON body whose length is not known up front (at least minSize
+    // bytes) and returns the stream to write it to. Chunked either way, compressed if accepted.
+    public OutputStream openJsonStream(HttpExchange ex, int code, long minSize) throws IOException {
+        Encoding e = choose(ex, minSize);
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        if (e != null) markEncoded(ex, e);
+        ex.sendResponseHeaders(code, 0);
+        return e == null ? ex.getResponseBody() : wrap(ex.getResponseBody(), e);
+    }
+
+    private static void markEncoded(HttpExchange ex, Encoding e) {
+        ex.getResponseHeaders().set("Content-Encoding", e.token);
+        String etag = ex.getResponseHeaders().getFirst("ETag");
+        if (etag != null && !etag.startsWith("W/")) ex.getResponseHeaders().set("ETag", "W/" + etag);
+    }
+}
@@ -0,0 +1,120 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// Reproducible synthetic incidents_enriched.ndjson for benchmarks: the same arguments always
+// give the same bytes. Ids are 1..count; words come from a Zipf-distributed vocabulary of
+// pronounceable pseudo words (word(0) is the most frequent), so posting list lengths look
+// like natural text. LoadGen draws its query terms from the same vocabulary.
+//
+//   java -cp out DatasetGen --out storage/incidents_enriched.ndjson --count 1000000
+//        [--seed 42] [--vocab 50000] [--zipf 1.0] [--titleWords 6] [--bodyWords 40]
+public class DatasetGen {
+
+    private static final String[] SYLLABLES = buildSyllables();
+    private static final long BASE_TIME = Instant.parse("2025-01-01T00:00:00Z").getEpochSecond();
+
+    public static void main(String[] args) throws IOException {
+        Path out = Paths.get("storage", "incidents_enriched.ndjson");
+        int count = 100_000;
+        long seed = 42;
+        int vocab = 50_000;
+        double zipf = 1.0;
+        int titleWords = 6;
+        int bodyWords = 40;
+        for (int i = 0; i < args.length; i++) {
+            if ("--out".equals(args[i]) && i + 1 < args.length) out = Paths.get(args[++i]);
+            else if ("--count".equals(args[i]) && i + 1 < args.length) count = Integer.parseInt(args[++i]);
+            else if ("--seed".equals(args[i]) && i + 1 < args.length) seed = Long.parseLong(args[++i]);
+            else if ("--vocab".equals(args[i]) && i + 1 < args.length) vocab = Integer.parseInt(args[++i]);
+            else if ("--zipf".equals(args[i]) && i + 1 < args.length) zipf = Double.parseDouble(args[++i]);
+            else if ("--titleWords".equals(args[i]) && i + 1 < args.length) titleWords = Integer.parseInt(args[++i]);
+            else if ("--bodyWords".equals(args[i]) && i + 1 < args.length) bodyWords = Integer.parseInt(args[++i]);
+        }
+
+        long t0 = System.nanoTime();
+        Zipf words = new Zipf(vocab, zipf);
+        SplittableRandom rnd = new SplittableRandom(seed);
+        Path dir = out.toAbsolutePath().getParent();
+        if (dir != null) Files.createDirectories(dir);
+        long bytes = 0;
+        try (BufferedWriter w = Files.newBufferedWriter(out, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (int id = 1; id <= count; id++) {
+                String line = incident(id, rnd, words, titleWords, bodyWords).toJson();
+                w.write(line);
+                w.newLine();
+                bytes += line.length() + 1;
+            }
+        }
+        System.out.printf("%s: %d incidents, %.1f MB, seed=%d vocab=%d zipf=%.2f in %d ms%n",
+                out, count, bytes / 1e6, seed, vocab, zipf, (System.nanoTime() - t0) / 1_000_000);
+    }
+
+    // Title of about titleWords words; body of about bodyWords words in lines of up to 10.
+    static Incident incident(int id, SplittableRandom rnd, Zipf words, int titleWords, int bodyWords) {
+        Incident inc = new Incident();
+        inc.id = id;
+        inc.title = text(rnd, words, Math.max(1, titleWords / 2 + rnd.nextInt(titleWords + 1)), Integer.MAX_VALUE);
+        inc.body = text(rnd, words, Math.max(1, bodyWords / 2 + rnd.nextInt(bodyWords + 1)), 10);
+        inc.userId = 1 + rnd.nextInt(10_000);
+        long imported = BASE_TIME + id;
+        inc.importedAt = Instant.ofEpochSecond(imported).toString();
+        inc.commentsCount = rnd.nextInt(11);
+        inc.uniqueEmailsCount = rnd.nextInt(inc.commentsCount + 1);
+        inc.enrichedAt = Instant.ofEpochSecond(imported + 1 + rnd.nextInt(60)).toString();
+        return inc;
+    }
+
+    static String text(SplittableRandom rnd, Zipf words, int n, int perLine) {
+        StringBuilder sb = new StringBuilder(n * 8);
+        for (int i = 0; i < n; i++) {
+            if (i > 0) sb.append(i % perLine == 0 ? '\n' : ' ');
+            sb.append(word(words.next(rnd)));
+        }
+        return sb.toString();
+    }
+
+    // Distinct word for every rank: rank written in base 64, one syllable per digit.
+    static String word(int rank) {
+        StringBuilder sb = new StringBuilder(8);
+        int r = rank;
+        do {
+            sb.append(SYLLABLES[r & 63]);
+            r >>>= 6;
+        } while (r != 0);
+        return sb.toString();
+    }
+
+    private static String[] buildSyllables() {
+        String consonants = "bdfgklmnprstvwxz";
+        String vowels = "aeio";
+        String[] s = new String[64];
+        for (int i = 0; i < 64; i++) s[i] = "" + consonants.charAt(i >> 2) + vowels.charAt(i & 3);
+        return s;
+    }
+
+    // Ranks 0..n-1 with P(rank) proportional to 1 / (rank + 1)^s, by binary search in the CDF.
+    static final class Zipf {
+        private final double[] cdf;
+
+        Zipf(int n, double s) {
+            cdf = new double[n];
+            double sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += 1 / Math.pow(i + 1, s);
+                cdf[i] = sum;
+            }
+            for (int i = 0; i < n; i++) cdf[i] /= sum;
+        }
+
+        int next(SplittableRandom rnd) {
+            int i = Arrays.binarySearch(cdf, rnd.nextDouble());
+            return Math.min(cdf.length - 1, i >= 0 ? i : -i - 1);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+// Follows incidents_enriched.ndjson while the server runs: lines appended after the ingested
+// offset are parsed (NdjsonLoader) and handed to the sink. Only complete lines are taken, so
+// a line the Enricher has half written is picked up on the next round.
+//
+// A WatchService on the directory wakes the follower up; it also checks every pollMs, since
+// file systems do not all deliver events. A rewrite (Enricher.writerLoop truncates the file)
+// is detected when the file got shorter, is a different file (renamed over), or its first
+// bytes changed; the follower then starts again from offset 0 and the sink reconciles.
+public class EnrichedFollower implements Closeable {
+
+    private static final int PREFIX = 4096;            // bytes fingerprinted to detect rewrites
+    private static final long MAX_ROUND = 64L << 20;   // bytes ingested per round
+
+    public interface Sink {
+        // Incidents in file order, ingested up to byte offset `end`. rewritten: the file was
+        // replaced and is read again from the start.
+        void apply(NdjsonLoader.Result res, long end, boolean rewritten);
+    }
+
+    private final Path file;
+    private final long pollMs;
+    private final Sink sink;
+    private final Consumer<String> log;
+    private final Thread thread;
+    private volatile boolean closed;
+
+    private long offset;       // end of the last complete line ingested
+    private Object fileKey;    // inode or similar, null where the file system has none
+    private int prefixLen;     // fingerprinted bytes, min(offset, PREFIX)
+    private long prefixCrc;
+    private boolean rewritten;
+
+    // loadedSize: bytes of the file the caller has already loaded; a trailing partial line in
+    // them is read again.
+    public EnrichedFollower(Path file, long loadedSize, long pollMs, Sink sink, Consumer<String> log) throws IOException {
+        this.file = file;
+        this.pollMs = pollMs;
+        this.sink = sink;
+        this.log = log;
+        if (Files.exists(file)) {
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                offset = lastLineEnd(ch, 0, Math.min(Math.max(loadedSize, 0), ch.size()));
+                fingerprint(ch);
+            }
+            fileKey = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+        }
+        this.thread = new Thread(this::run, "enriched-follow");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    private void run() {
+        Path dir = file.toAbsolutePath().getParent();
+        try (WatchService watcher = dir.getFileSystem().newWatchService()) {
+            dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+            while (!closed) {
+                WatchKey key = watcher.poll(pollMs, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    key.pollEvents(); // which file changed does not matter, check() is cheap
+                    key.reset();
+                }
+                try {
+                    while (check()) {
+                        // more than MAX_ROUND was pending: keep going
+                    }
+                } catch (IOException e) {
+                    log.accept("WARN follow " + file + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            log.accept("ERROR follow " + file + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException ignored) {
+        }
+    }
+
+    // One round; true if there is more to read right away.
+    private boolean check() throws IOException {
+        if (!Files.exists(file)) return false; // deleted: wait until it is written again
+        Object key = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (!Objects.equals(key, fileKey) || size < offset || !samePrefix(ch)) {
+                log.accept("follow " + file + ": rewritten (size=" + size + " offset=" + offset + "), reading it again");
+                fileKey = key;
+                offset = 0;
+                prefixLen = 0;
+                rewritten = true;
+            }
+            if (size == offset) return false;
+
+            long end = lastLineEnd(ch, offset, Math.min(size, offset + MAX_ROUND));
+            if (end == offset) {
+                // a single line longer than MAX_ROUND, or only a partial line so far
+                end = size - offset > MAX_ROUND ? lastLineEnd(ch, offset, size) : offset;
+                if (end == offset) return false;
+            }
+
+            NdjsonLoader.Result res = NdjsonLoader.load(file, offset, end, ForkJoinPool.commonPool());
+            sink.apply(res, end, rewritten);
+            rewritten = false;
+            offset = end;
+            if (prefixLen < PREFIX) fingerprint(ch);
+            return end < size && lastLineEnd(ch, end, size) > end;
+        }
+    }
+
+    private void fingerprint(FileChannel ch) throws IOException {
+        prefixLen = (int) Math.min(offset, PREFIX);
+        prefixCrc = crc(ch, prefixLen);
+    }
+
+    private boolean samePrefix(FileChannel ch) throws IOException {
+        return prefixLen == 0 || crc(ch, prefixLen) == prefixCrc;
+    }
+
+    private static long crc(FileChannel ch, int len) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(len);
+        while (buf.hasRemaining() && ch.read(buf, buf.position()) > 0) { }
+        buf.flip();
+        CRC32 crc = new CRC32();
+        crc.update(buf);
+        return crc.getValue();
+    }
+
+    // Position right after the last '\n' in [from, to), or from if there is none.
+    private static long lastLineEnd(FileChannel ch, long from, long to) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(8192);
+        long pos = to;
+        while (pos > from) {
+            int n = (int) Math.min(buf.capacity(), pos - from);
+            buf.clear().limit(n);
+            long start = pos - n;
+            while (buf.hasRemaining() && ch.read(buf, start + buf.position()) > 0) { }
+            for (int i = buf.position() - 1; i >= 0; i--) {
+                if (buf.get(i) == '\n') return start + i + 1;
+            }
+            pos = start;
+        }
+        return from;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        thread.interrupt();
+    }
+}
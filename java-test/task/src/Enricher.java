@@ -4,7 +4,6 @@ import java.net.http.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.time.Instant;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -12,7 +11,8 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class Enricher {
 
     private static final HttpClient CLIENT = HttpClient.newHttpClient();
-    private static final String POISON_PILL = "__POISON__";
+    private static final byte[] POISON_PILL = new byte[0]; // compared by identity
+    private static final JsonMini.Keys EMAIL = new JsonMini.Keys("email");
 
     public static void main(String[] args) {
         Args a = Args.parse(args);
@@ -35,7 +35,7 @@ public class Enricher {
         }
 
         ExecutorService pool = Executors.newFixedThreadPool(a.threads);
-        BlockingQueue<String> queue = new LinkedBlockingQueue<>(10_000);
+        BlockingQueue<byte[]> queue = new LinkedBlockingQueue<>(10_000);
 
         AtomicInteger ok = new AtomicInteger(0);
         AtomicInteger fail = new AtomicInteger(0);
@@ -92,7 +92,7 @@ public class Enricher {
     private static void enrichOne(
             String baseUrl,
             String incidentNdjsonLine,
-            BlockingQueue<String> queue,
+            BlockingQueue<byte[]> queue,
             AtomicInteger ok,
             AtomicInteger fail
     ) {
@@ -105,28 +105,36 @@ public class Enricher {
 
             String url = baseUrl + "/comments?postId=" + inc.id;
             HttpRequest req = HttpRequest.newBuilder().uri(URI.create(url)).GET().build();
-            HttpResponse<String> resp = CLIENT.send(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+            HttpResponse<InputStream> resp = CLIENT.send(req, HttpResponse.BodyHandlers.ofInputStream());
             if (resp.statusCode() != 200) {
+                resp.body().close();
                 fail.incrementAndGet();
                 log("enrich.log", ts, thread, "ERROR id=" + inc.id + " HTTP " + resp.statusCode());
                 return;
             }
 
-            List<String> comments = JsonMini.splitTopLevelObjects(resp.body()); // expects array
-            int commentsCount = comments.size();
-
+            // comments are read one by one as they arrive
+            int commentsCount = 0;
             HashSet<String> emails = new HashSet<>();
-            for (String c : comments) {
-                String email = JsonMini.getStringOrNull(c, "email");
-                if (email != null) emails.add(email.toLowerCase(Locale.ROOT));
+            try (JsonMini.ArrayReader comments = new JsonMini.ArrayReader(resp.body())) { // expects array
+                while (comments.next()) {
+                    if (!comments.isObject()) continue;
+                    commentsCount++;
+                    JsonMini.ObjectReader c = comments.object();
+                    while (c.nextKey()) {
+                        if (c.key(EMAIL) < 0) continue;
+                        String email = c.stringOrNull();
+                        if (email != null) emails.add(email.toLowerCase(Locale.ROOT));
+                        break;
+                    }
+                }
             }
 
             inc.commentsCount = commentsCount;
             inc.uniqueEmailsCount = emails.size();
             inc.enrichedAt = Instant.now().toString();
 
-            String outLine = inc.toJson();
-            queue.put(outLine);
+            queue.put(inc.toJsonBytes());
 
             ok.incrementAndGet();
             log("enrich.log", Instant.now(), thread,
@@ -138,15 +146,16 @@ public class Enricher {
         }
     }
 
-    private static void writerLoop(BlockingQueue<String> queue, Path out) {
-        try (BufferedWriter w = Files.newBufferedWriter(out, StandardCharsets.UTF_8,
-                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+    // lines arrive as the UTF-8 JSON of one incident each and are written as they are
+    private static void writerLoop(BlockingQueue<byte[]> queue, Path out) {
+        try (OutputStream w = new BufferedOutputStream(Files.newOutputStream(out,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING), 64 * 1024)) {
 
             while (true) {
-                String line = queue.take();
-                if (POISON_PILL.equals(line)) break;
+                byte[] line = queue.take();
+                if (line == POISON_PILL) break;
                 w.write(line);
-                w.newLine();
+                w.write('\n');
             }
 
         } catch (Exception e) {
@@ -156,15 +165,7 @@ public class Enricher {
     }
 
     private static void log(String fileName, Instant ts, String threadName, String message) {
-        Path p = Paths.get("logs", fileName);
-        String line = DateTimeFormatter.ISO_INSTANT.format(ts) +
-                ", " + threadName +
-                ", " + message;
-        try (BufferedWriter w = Files.newBufferedWriter(p, StandardCharsets.UTF_8,
-                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
-            w.write(line);
-            w.newLine();
-        } catch (IOException ignored) { }
+        AsyncLog.get(fileName).log(ts, threadName, message);
     }
 
     static class Args {
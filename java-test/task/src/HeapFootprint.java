@@ -0,0 +1,182 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Heap report: the old boxed layout (ConcurrentHashMap<Integer, Incident> store plus
+// ConcurrentHashMap<String, Set<Integer>> postings) against IntObjectMap + InvertedIndex.
+// Only structure overhead is measured: all entries point at one shared Incident, and every
+// document gets `terms` distinct words from a skewed vocabulary of `vocab` words.
+// A second table is the retained size of a store of `text` incidents with their own text:
+// heap strings against arena copies (the parsed incidents are dropped, as on server load).
+//
+//   java -Xmx5g -cp out HeapFootprint [n ...]      (defaults: 1000000 10000000)
+//   -Dterms=8 -Dvocab=50000 -Dtext=1000000 -DbodyWords=80
+public class HeapFootprint {
+
+    private static final int TERMS = Integer.getInteger("terms", 8);
+    private static final int VOCAB = Integer.getInteger("vocab", 50_000);
+    private static final int TEXT = Integer.getInteger("text", 1_000_000);
+    private static final int BODY_WORDS = Integer.getInteger("bodyWords", 80);
+
+    public static void main(String[] args) {
+        int[] sizes = args.length == 0 ? new int[]{1_000_000, 10_000_000}
+                : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+
+        String[] vocab = new String[VOCAB];
+        for (int i = 0; i < VOCAB; i++) vocab[i] = "t" + i;
+        Incident shared = new Incident();
+
+        System.out.printf("terms/doc=%d vocab=%d%n", TERMS, VOCAB);
+        System.out.printf("%-10s %-6s %12s %12s %12s %10s%n", "incidents", "layout", "store MB", "index MB", "total MB", "B/incident");
+        for (int n : sizes) {
+            long[] old = measureOld(n, vocab, shared);
+            report(n, "old", old);
+            long[] now = measureNew(n, vocab, shared);
+            report(n, "new", now);
+            System.out.printf("%-10d %-6s %36.1fx%n", n, "ratio", (double) (old[0] + old[1]) / (now[0] + now[1]));
+        }
+
+        if (TEXT <= 0) return;
+        System.out.printf("%ntext incidents=%d body words=%d%n", TEXT, BODY_WORDS);
+        System.out.printf("%-10s %12s %10s %12s%n", "text", "heap MB", "B/incident", "arena MB");
+        reportText("heap", measureText(TEXT, vocab, null), 0);
+        for (TextArena.Kind kind : TextArena.Kind.values()) {
+            try {
+                Path scratch = Files.createTempFile("footprint", ".arena");
+                try (TextArena arena = new TextArena(kind, scratch)) {
+                    reportText(kind.name().toLowerCase(Locale.ROOT), measureText(TEXT, vocab, arena), arena.usedBytes());
+                } finally {
+                    Files.deleteIfExists(scratch);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // Retained heap of a store of n incidents with title, body and timestamps.
+    private static long measureText(int n, String[] vocab, TextArena arena) {
+        long base = usedHeap();
+        IntObjectMap<Incident> store = new IntObjectMap<>();
+        StringBuilder sb = new StringBuilder();
+        for (int id = 1; id <= n; id++) {
+            SplittableRandom rnd = new SplittableRandom(id);
+            Incident inc = new Incident();
+            inc.id = id;
+            inc.userId = 1 + rnd.nextInt(10);
+            inc.title = words(sb, rnd, vocab, 6);
+            inc.body = words(sb, rnd, vocab, BODY_WORDS);
+            inc.importedAt = "2025-12-21T15:16:46." + (100_000 + rnd.nextInt(900_000)) + "Z";
+            inc.enrichedAt = "2025-12-21T15:16:47." + (100_000 + rnd.nextInt(900_000)) + "Z";
+            inc.commentsCount = rnd.nextInt(20);
+            inc.uniqueEmailsCount = rnd.nextInt(10);
+            store.put(id, arena == null ? inc : inc.offHeapCopy(arena));
+        }
+        long retained = usedHeap() - base;
+        keep(store);
+        return retained;
+    }
+
+    private static String words(StringBuilder sb, SplittableRandom rnd, String[] vocab, int count) {
+        sb.setLength(0);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) sb.append(' ');
+            double u = rnd.nextDouble();
+            sb.append(vocab[(int) (u * u * u * vocab.length)]);
+        }
+        return sb.toString();
+    }
+
+    private static void reportText(String layout, long retained, long arenaBytes) {
+        double mb = 1024.0 * 1024.0;
+        System.out.printf("%-10s %12.1f %10.1f %12.1f%n", layout, retained / mb, (double) retained / TEXT, arenaBytes / mb);
+    }
+
+    private static long[] measureOld(int n, String[] vocab, Incident shared) {
+        long base = usedHeap();
+        ConcurrentHashMap<Integer, Incident> store = new ConcurrentHashMap<>();
+        Integer[] boxed = new Integer[n + 1]; // the old server shared inc.id between store and postings
+        for (int id = 1; id <= n; id++) {
+            boxed[id] = id;
+            store.put(boxed[id], shared);
+        }
+        long afterStore = usedHeap() - (16 + 4L * (n + 1)); // minus the boxed[] helper
+
+        ConcurrentHashMap<String, Set<Integer>> index = new ConcurrentHashMap<>();
+        int[] doc = new int[TERMS];
+        for (int id = 1; id <= n; id++) {
+            Integer key = boxed[id];
+            for (int t : docTerms(id, doc)) index.computeIfAbsent(vocab[t], k -> ConcurrentHashMap.newKeySet()).add(key);
+        }
+        boxed = null;
+        long afterIndex = usedHeap() + (16 + 4L * (n + 1));
+        long[] r = {afterStore - base, afterIndex - afterStore};
+        keep(store, index);
+        return r;
+    }
+
+    private static long[] measureNew(int n, String[] vocab, Incident shared) {
+        long base = usedHeap();
+        IntObjectMap<Incident> store = new IntObjectMap<>();
+        for (int id = 1; id <= n; id++) store.put(id, shared);
+        long afterStore = usedHeap();
+
+        InvertedIndex index = new InvertedIndex();
+        int[] doc = new int[TERMS];
+        List<String> words = new ArrayList<>(TERMS);
+        for (int id = 1; id <= n; id++) {
+            words.clear();
+            for (int t : docTerms(id, doc)) words.add(vocab[t]);
+            index.addTerms(id, words);
+        }
+        long afterIndex = usedHeap();
+        long[] r = {afterStore - base, afterIndex - afterStore};
+        keep(store, index);
+        return r;
+    }
+
+    // TERMS distinct vocabulary indexes for a document, skewed towards small indexes.
+    private static int[] docTerms(int id, int[] out) {
+        SplittableRandom rnd = new SplittableRandom(id * 0x9E3779B97F4A7C15L);
+        int n = 0;
+        while (n < out.length) {
+            double u = rnd.nextDouble();
+            int t = (int) (u * u * u * VOCAB);
+            boolean dup = false;
+            for (int i = 0; i < n; i++) if (out[i] == t) { dup = true; break; }
+            if (!dup) out[n++] = t;
+        }
+        return out;
+    }
+
+    private static void report(int n, String layout, long[] r) {
+        double mb = 1024.0 * 1024.0;
+        System.out.printf("%-10d %-6s %12.1f %12.1f %12.1f %10.1f%n",
+                n, layout, r[0] / mb, r[1] / mb, (r[0] + r[1]) / mb, (double) (r[0] + r[1]) / n);
+    }
+
+    private static volatile Object sink;
+
+    private static void keep(Object... o) {
+        sink = o;
+        sink = null;
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            used = Math.min(used, rt.totalMemory() - rt.freeMemory());
+        }
+        return used;
+    }
+}
@@ -1,13 +1,12 @@
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.ProxySelector;
 import java.net.URI;
 import java.net.http.*;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.time.Instant;
-import java.time.format.DateTimeFormatter;
-import java.util.List;
 import java.net.ProxySelector;
 import java.time.Duration;
 
@@ -18,6 +17,10 @@ public class Importer {
     .connectTimeout(Duration.ofSeconds(10))
     .proxy(ProxySelector.getDefault())         // <-- не мешает, часто помогает
     .build();
+
+    private static final JsonMini.Keys POST_FIELDS = new JsonMini.Keys("id", "userId", "title", "body");
+    private static final int P_ID = 0, P_USER_ID = 1, P_TITLE = 2, P_BODY = 3;
+
     public static void main(String[] args) {
         Args a = Args.parse(args);
 
@@ -44,8 +47,9 @@ public class Importer {
                 .build();
 
 
-            HttpResponse<String> resp = CLIENT.send(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+            HttpResponse<InputStream> resp = CLIENT.send(req, HttpResponse.BodyHandlers.ofInputStream());
             if (resp.statusCode() != 200) {
+                resp.body().close();
                 errors++;
                 log("import.log", started, Thread.currentThread().getName(), imported,
                         "HTTP " + resp.statusCode() + " for " + url);
@@ -53,30 +57,35 @@ public class Importer {
                 return;
             }
 
-            String body = resp.body();
-            List<String> objs = JsonMini.splitTopLevelObjects(body); // expects JSON array
-
             Path out = Paths.get("storage", "incidents.ndjson");
-            try (BufferedWriter w = Files.newBufferedWriter(out, StandardCharsets.UTF_8,
-                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // posts are parsed as they arrive, the response is never held as a whole
+            try (JsonMini.ArrayReader posts = new JsonMini.ArrayReader(resp.body()); // expects JSON array
+                 OutputStream w = new BufferedOutputStream(Files.newOutputStream(out,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING), 64 * 1024)) {
 
-                for (String obj : objs) {
-                    try {
-                        int id = JsonMini.getInt(obj, "id");
-                        int userId = JsonMini.getInt(obj, "userId");
-                        String title = JsonMini.getString(obj, "title");
-                        String postBody = JsonMini.getString(obj, "body");
+                JsonMini.ByteWriter line = new JsonMini.ByteWriter(1024); // reused for every post
 
-                        String importedAt = Instant.now().toString();
+                while (posts.next()) {
+                    try {
                         Incident inc = new Incident();
-                        inc.id = id;
-                        inc.userId = userId;
-                        inc.title = title;
-                        inc.body = postBody;
-                        inc.importedAt = importedAt;
-
-                        w.write(inc.toJson());
-                        w.newLine();
+                        JsonMini.ObjectReader r = posts.object();
+                        while (r.nextKey()) {
+                            switch (r.key(POST_FIELDS)) {
+                                case P_ID -> inc.id = r.intOrNull();
+                                case P_USER_ID -> inc.userId = r.intOrNull();
+                                case P_TITLE -> inc.title = r.stringOrNull();
+                                case P_BODY -> inc.body = r.stringOrNull();
+                                default -> { }
+                            }
+                        }
+                        if (inc.id == null) throw new IllegalArgumentException("Missing int field: id");
+                        if (inc.userId == null) throw new IllegalArgumentException("Missing int field: userId");
+                        if (inc.title == null) throw new IllegalArgumentException("Missing string field: title");
+                        if (inc.body == null) throw new IllegalArgumentException("Missing string field: body");
+                        inc.importedAt = Instant.now().toString();
+
+                        inc.writeJson(line.reset());
+                        line.raw('\n').writeTo(w);
                         imported++;
                     } catch (Exception ex) {
                         errors++;
@@ -101,16 +110,7 @@ public class Importer {
     }
 
     private static void log(String fileName, Instant ts, String threadName, int imported, String message) {
-        Path p = Paths.get("logs", fileName);
-        String line = DateTimeFormatter.ISO_INSTANT.format(ts) +
-                ", " + threadName +
-                ", imported=" + imported +
-                ", " + message;
-        try (BufferedWriter w = Files.newBufferedWriter(p, StandardCharsets.UTF_8,
-                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
-            w.write(line);
-            w.newLine();
-        } catch (IOException ignored) { }
+        AsyncLog.get(fileName).log(ts, threadName, "imported=" + imported + ", " + message);
     }
 
     static class Args {
@@ -1,5 +1,4 @@
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
 
 public class Incident {
     // required for imported
@@ -17,37 +16,181 @@ public class Incident {
     // local created
     String createdAt;
 
+    // number of word tokens in title+body, set by InvertedIndex (BM25 length normalization)
+    int indexedLength;
+
+    // bumped by invalidateJson() and withText(); part of the GET ETag
+    volatile int version;
+
+    // local log tombstone {"id":N,"deleted":true}; such records are never stored
+    boolean deleted;
+
+    // cached UTF-8 form of toJson(); built lazily, dropped by invalidateJson()
+    private volatile byte[] jsonBytes;
+    private volatile Compression.Cached compressedJson; // same lifetime as jsonBytes
+
+    // off-heap text (see offHeapCopy); when arena is set the String fields above are null
+    private TextArena arena;
+    private long textRef;
+
+    private static final int T_TITLE = 0, T_BODY = 1, T_IMPORTED = 2, T_ENRICHED = 3, T_CREATED = 4;
+
+    private static final JsonMini.Keys FIELDS = new JsonMini.Keys("id", "userId", "title", "body", "importedAt",
+            "commentsCount", "uniqueEmailsCount", "enrichedAt", "createdAt", "deleted");
+    private static final int F_ID = 0, F_USER_ID = 1, F_TITLE = 2, F_BODY = 3, F_IMPORTED = 4, F_COMMENTS = 5,
+            F_EMAILS = 6, F_ENRICHED = 7, F_CREATED = 8, F_DELETED = 9;
+
     public static Incident fromNdjson(String line) {
-        // line is a JSON object
+        return read(new JsonMini.ObjectReader(line));
+    }
+
+    // UTF-8 line in buf[from, to), parsed in place
+    public static Incident fromNdjson(byte[] buf, int from, int to) {
+        return read(new JsonMini.ObjectReader(buf, from, to));
+    }
+
+    // one pass, unknown keys are skipped
+    private static Incident read(JsonMini.ObjectReader r) {
         Incident inc = new Incident();
-        inc.id = JsonMini.getIntOrNull(line, "id");
-        inc.userId = JsonMini.getIntOrNull(line, "userId");
-        inc.title = JsonMini.getStringOrNull(line, "title");
-        inc.body = JsonMini.getStringOrNull(line, "body");
-        inc.importedAt = JsonMini.getStringOrNull(line, "importedAt");
-        inc.commentsCount = JsonMini.getIntOrNull(line, "commentsCount");
-        inc.uniqueEmailsCount = JsonMini.getIntOrNull(line, "uniqueEmailsCount");
-        inc.enrichedAt = JsonMini.getStringOrNull(line, "enrichedAt");
-        inc.createdAt = JsonMini.getStringOrNull(line, "createdAt");
+        while (r.nextKey()) {
+            switch (r.key(FIELDS)) {
+                case F_ID -> inc.id = r.intOrNull();
+                case F_USER_ID -> inc.userId = r.intOrNull();
+                case F_TITLE -> inc.title = r.stringOrNull();
+                case F_BODY -> inc.body = r.stringOrNull();
+                case F_IMPORTED -> inc.importedAt = r.stringOrNull();
+                case F_COMMENTS -> inc.commentsCount = r.intOrNull();
+                case F_EMAILS -> inc.uniqueEmailsCount = r.intOrNull();
+                case F_ENRICHED -> inc.enrichedAt = r.stringOrNull();
+                case F_CREATED -> inc.createdAt = r.stringOrNull();
+                case F_DELETED -> inc.deleted = Boolean.TRUE.equals(r.booleanOrNull());
+                default -> { }
+            }
+        }
         return inc;
     }
 
+    public static byte[] tombstone(int id) {
+        return ("{\"id\":" + id + ",\"deleted\":true}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Text accessors: work for both on-heap and off-heap incidents. Readers of incidents
+    // that may sit in the server store must use these instead of the fields.
+    public String title() {
+        return arena == null ? title : arena.get(textRef, T_TITLE);
+    }
+
+    public String body() {
+        return arena == null ? body : arena.get(textRef, T_BODY);
+    }
+
+    public String importedAt() {
+        return arena == null ? importedAt : arena.get(textRef, T_IMPORTED);
+    }
+
+    public String enrichedAt() {
+        return arena == null ? enrichedAt : arena.get(textRef, T_ENRICHED);
+    }
+
+    public String createdAt() {
+        return arena == null ? createdAt : arena.get(textRef, T_CREATED);
+    }
+
+    // Copy whose text lives in the arena: only ids, counters and the handle stay on heap.
+    // The copy must be published (e.g. via the store) before other threads read it.
+    public Incident offHeapCopy(TextArena a) {
+        Incident c = new Incident();
+        c.id = id;
+        c.userId = userId;
+        c.commentsCount = commentsCount;
+        c.uniqueEmailsCount = uniqueEmailsCount;
+        c.indexedLength = indexedLength;
+        c.version = version;
+        c.textRef = a.put(title(), body(), importedAt(), enrichedAt(), createdAt());
+        c.arena = a;
+        return c;
+    }
+
+    // Updated copy for PUT/PATCH: incidents in the server store are replaced, not modified,
+    // so readers and the indexes can still see the old version while the new one is installed.
+    public Incident withText(String newTitle, String newBody) {
+        Incident c = new Incident();
+        c.id = id;
+        c.title = newTitle;
+        c.body = newBody;
+        c.userId = userId;
+        c.importedAt = importedAt();
+        c.commentsCount = commentsCount;
+        c.uniqueEmailsCount = uniqueEmailsCount;
+        c.enrichedAt = enrichedAt();
+        c.createdAt = createdAt();
+        c.version = version + 1;
+        return c;
+    }
+
+    private static final byte[] J_ID = JsonMini.ByteWriter.name("id"), J_TITLE = JsonMini.ByteWriter.name("title"),
+            J_BODY = JsonMini.ByteWriter.name("body"), J_USER_ID = JsonMini.ByteWriter.name("userId"),
+            J_IMPORTED = JsonMini.ByteWriter.name("importedAt"), J_COMMENTS = JsonMini.ByteWriter.name("commentsCount"),
+            J_EMAILS = JsonMini.ByteWriter.name("uniqueEmailsCount"), J_ENRICHED = JsonMini.ByteWriter.name("enrichedAt"),
+            J_CREATED = JsonMini.ByteWriter.name("createdAt");
+
+    private static final ThreadLocal<JsonMini.ByteWriter> SCRATCH = ThreadLocal.withInitial(() -> new JsonMini.ByteWriter(1024));
+
+    // Same bytes as toJsonBytes(); does not fill the cache.
     public String toJson() {
-        // keep stable order (handy for diff/logs)
-        Map<String, Object> m = new LinkedHashMap<>();
+        byte[] b = jsonBytes;
+        return b != null ? new String(b, StandardCharsets.UTF_8) : encode().toString();
+    }
 
-        if (id != null) m.put("id", id);
-        if (title != null) m.put("title", title);
-        if (body != null) m.put("body", body);
-        if (userId != null) m.put("userId", userId);
-        if (importedAt != null) m.put("importedAt", importedAt);
+    // Writes the JSON object straight into w, field by field. Stable key order (handy for
+    // diff/logs), null fields left out.
+    public void writeJson(JsonMini.ByteWriter w) {
+        String title = title(), body = body(), importedAt = importedAt(), enrichedAt = enrichedAt(), createdAt = createdAt();
+        w.beginObject();
+        if (id != null) w.key(J_ID).number(id);
+        if (title != null) w.key(J_TITLE).string(title);
+        if (body != null) w.key(J_BODY).string(body);
+        if (userId != null) w.key(J_USER_ID).number(userId);
+        if (importedAt != null) w.key(J_IMPORTED).string(importedAt);
 
-        if (commentsCount != null) m.put("commentsCount", commentsCount);
-        if (uniqueEmailsCount != null) m.put("uniqueEmailsCount", uniqueEmailsCount);
-        if (enrichedAt != null) m.put("enrichedAt", enrichedAt);
+        if (commentsCount != null) w.key(J_COMMENTS).number(commentsCount);
+        if (uniqueEmailsCount != null) w.key(J_EMAILS).number(uniqueEmailsCount);
+        if (enrichedAt != null) w.key(J_ENRICHED).string(enrichedAt);
 
-        if (createdAt != null) m.put("createdAt", createdAt);
+        if (createdAt != null) w.key(J_CREATED).string(createdAt);
+        w.endObject();
+    }
+
+    // Shared, do not modify the returned array. Off-heap incidents are encoded on every call,
+    // keeping a copy on heap would defeat the point of the arena.
+    public byte[] toJsonBytes() {
+        byte[] b = jsonBytes;
+        if (b == null) {
+            b = encode().toByteArray();
+            if (arena == null) jsonBytes = b;
+        }
+        return b;
+    }
+
+    // this thread's scratch writer holding the JSON; valid until the next encode() here
+    private JsonMini.ByteWriter encode() {
+        JsonMini.ByteWriter w = SCRATCH.get().reset();
+        writeJson(w);
+        return w;
+    }
+
+    // Holder for compressed forms of toJsonBytes(); null for off-heap incidents (nothing is cached).
+    public Compression.Cached compressedJson() {
+        if (arena != null) return null;
+        Compression.Cached c = compressedJson;
+        if (c == null) compressedJson = c = new Compression.Cached();
+        return c;
+    }
 
-        return JsonMini.obj(m);
+    // Must be called after changing any field of an incident that may already be cached.
+    public void invalidateJson() {
+        jsonBytes = null;
+        compressedJson = null;
+        version++;
     }
 }
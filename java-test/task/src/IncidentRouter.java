@@ -0,0 +1,304 @@
+import com.sun.net.httpserver.*;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Front for a partitioned deployment. Partition i of the --partitions list must run as
+// IncidentServer --partition i/n; each one owns a hash bucket of ids (see Partition).
+//
+//   GET, PUT, PATCH, DELETE /incidents?id= -> the owning partition
+//   POST /incidents, _bulk   -> partitions round-robin (each assigns ids it owns)
+//   GET  /incidents/search   -> every partition in parallel, results merged:
+//        id order: merge by id, cut at limit, X-Next-Cursor from the last id returned
+//        k:        merge by the partitions' X-Scores; idf is per partition, so with skewed
+//                  partitions the ranking is approximate
+//
+// Local test: java IncidentRouter --port 8080 --partitions localhost:8081,localhost:8082
+public class IncidentRouter {
+
+    private static final HttpClient CLIENT = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    private static final String[] PASSED_HEADERS = {"Content-Type", "Content-Encoding", "Vary", "ETag", "X-Next-Cursor", "X-Scores"};
+
+    private final List<String> partitions; // base urls, index = partition number
+    private final Duration timeout;
+    private final AtomicInteger roundRobin = new AtomicInteger();
+    private final Compression compression;
+
+    private final Metrics metrics = new Metrics();
+    private final Metrics.Route getRoute = metrics.route("GET", "/incidents");
+    private final Metrics.Route postRoute = metrics.route("POST", "/incidents");
+    private final Metrics.Route updateRoute = metrics.route("UPDATE", "/incidents"); // PUT, PATCH, DELETE
+    private final Metrics.Route searchRoute = metrics.route("GET", "/incidents/search");
+    private final Metrics.Route bulkRoute = metrics.route("POST", "/incidents/_bulk");
+
+    public IncidentRouter(List<String> partitions, Duration timeout, Compression compression) {
+        this.partitions = partitions;
+        this.timeout = timeout;
+        this.compression = compression;
+        metrics.gauge("incident_router_partitions", partitions::size);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = 8080;
+        int threads = 16;
+        long timeoutMs = 10_000;
+        int compressMin = 1024;
+        List<String> partitions = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if ("--port".equals(args[i]) && i + 1 < args.length) port = Integer.parseInt(args[++i]);
+            else if ("--threads".equals(args[i]) && i + 1 < args.length) threads = Integer.parseInt(args[++i]);
+            else if ("--timeoutMs".equals(args[i]) && i + 1 < args.length) timeoutMs = Long.parseLong(args[++i]);
+            else if ("--compressMin".equals(args[i]) && i + 1 < args.length) compressMin = Integer.parseInt(args[++i]);
+            else if ("--partitions".equals(args[i]) && i + 1 < args.length) {
+                for (String p : args[++i].split(",")) {
+                    if (p.isBlank()) continue;
+                    p = p.trim();
+                    partitions.add(p.startsWith("http") ? p : "http://" + p);
+                }
+            }
+        }
+        if (partitions.isEmpty()) {
+            System.err.println("usage: IncidentRouter --partitions host:port,host:port,... [--port 8080]");
+            return;
+        }
+
+        IncidentRouter router = new IncidentRouter(partitions, Duration.ofMillis(timeoutMs), new Compression(compressMin));
+        // headers and body go out as separate writes; with Nagle on, a small body waits for the
+        // client's delayed ACK (~40 ms per request, found with LoadGen)
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) System.setProperty("sun.net.httpserver.nodelay", "true");
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/incidents", router::handleIncidents);
+        server.createContext("/incidents/search", router::handleSearch);
+        server.createContext("/incidents/_bulk", router::handleBulk);
+        server.createContext("/metrics", router::handleMetrics);
+        server.setExecutor(Executors.newFixedThreadPool(threads));
+        server.start();
+
+        log("START port=" + port + " partitions=" + partitions);
+        System.out.println("Router started on http://localhost:" + port + " -> " + partitions);
+    }
+
+    private void handleIncidents(HttpExchange ex) throws IOException {
+        long t0 = System.nanoTime();
+        int code = 502;
+        try {
+            int target;
+            if (!"POST".equalsIgnoreCase(ex.getRequestMethod())) {
+                // a missing or bad id goes to partition 0, which answers it like a single server
+                target = 0;
+                String id = IncidentServer.parseQuery(ex.getRequestURI().getRawQuery()).get("id");
+                try { if (id != null) target = Partition.owner(Integer.parseInt(id), partitions.size()); }
+                catch (NumberFormatException ignored) { }
+            } else {
+                target = nextPartition();
+            }
+            code = forward(ex, target);
+        } finally {
+            long ns = System.nanoTime() - t0;
+            String m = ex.getRequestMethod();
+            ("POST".equalsIgnoreCase(m) ? postRoute : "GET".equalsIgnoreCase(m) ? getRoute : updateRoute).record(code, ns);
+            log(ex.getRequestMethod() + " " + ex.getRequestURI().getPath() + " -> " + code + " in " + ns / 1_000_000 + "ms");
+        }
+    }
+
+    private void handleBulk(HttpExchange ex) throws IOException {
+        long t0 = System.nanoTime();
+        int code = 502;
+        try {
+            code = forward(ex, nextPartition());
+        } finally {
+            long ns = System.nanoTime() - t0;
+            bulkRoute.record(code, ns);
+            log("POST /incidents/_bulk -> " + code + " in " + ns / 1_000_000 + "ms");
+        }
+    }
+
+    private int nextPartition() {
+        return Math.floorMod(roundRobin.getAndIncrement(), partitions.size());
+    }
+
+    // Proxies the exchange to one partition, streaming both bodies. Returns the status sent.
+    private int forward(HttpExchange ex, int target) throws IOException {
+        URI uri = ex.getRequestURI();
+        HttpRequest.Builder req = HttpRequest.newBuilder()
+                .uri(URI.create(partitions.get(target) + uri.getRawPath() + (uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery())))
+                .timeout(timeout);
+        copyHeader(ex, req, "If-None-Match");
+        copyHeader(ex, req, "If-Match");
+        copyHeader(ex, req, "Content-Type");
+        copyHeader(ex, req, "Accept-Encoding"); // the partition compresses, the body is passed through as is
+        if ("GET".equalsIgnoreCase(ex.getRequestMethod())) req.GET();
+        else req.method(ex.getRequestMethod(), HttpRequest.BodyPublishers.ofInputStream(ex::getRequestBody));
+
+        HttpResponse<InputStream> resp;
+        try {
+            resp = CLIENT.send(req.build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (IOException | InterruptedException e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            return writeJson(ex, 502, "{\"error\":\"partition " + target + " unavailable\"}");
+        }
+
+        int code = resp.statusCode();
+        for (String h : PASSED_HEADERS) resp.headers().firstValue(h).ifPresent(v -> ex.getResponseHeaders().set(h, v));
+        try (InputStream in = resp.body()) {
+            if (code == 304 || code == 204) {
+                ex.sendResponseHeaders(code, -1);
+            } else {
+                ex.sendResponseHeaders(code, resp.headers().firstValueAsLong("Content-Length").orElse(0));
+                try (OutputStream os = ex.getResponseBody()) {
+                    in.transferTo(os);
+                }
+            }
+        }
+        ex.close();
+        return code;
+    }
+
+    private static void copyHeader(HttpExchange ex, HttpRequest.Builder req, String name) {
+        String v = ex.getRequestHeaders().getFirst(name);
+        if (v != null) req.header(name, v);
+    }
+
+    // One hit of a partition's search response.
+    private static final class Hit {
+        final int id;
+        final double score;
+        final byte[] json;
+
+        Hit(int id, double score, byte[] json) {
+            this.id = id;
+            this.score = score;
+            this.json = json;
+        }
+    }
+
+    private static final JsonMini.Keys ID = new JsonMini.Keys("id");
+
+    private static int hitId(JsonMini.ObjectReader r) {
+        while (r.nextKey()) {
+            if (r.key(ID) < 0) continue;
+            Integer id = r.intOrNull();
+            if (id != null) return id;
+        }
+        throw new IllegalArgumentException("Missing int field: id");
+    }
+
+    private void handleSearch(HttpExchange ex) throws IOException {
+        long t0 = System.nanoTime();
+        int code = 502;
+        try {
+            String rawQuery = ex.getRequestURI().getRawQuery();
+            Map<String, String> q = IncidentServer.parseQuery(rawQuery);
+            boolean ranked = q.containsKey("k");
+
+            List<CompletableFuture<HttpResponse<byte[]>>> calls = new ArrayList<>(partitions.size());
+            for (String base : partitions) {
+                HttpRequest req = HttpRequest.newBuilder()
+                        .uri(URI.create(base + "/incidents/search" + (rawQuery == null ? "" : "?" + rawQuery)))
+                        .timeout(timeout)
+                        .GET()
+                        .build();
+                calls.add(CLIENT.sendAsync(req, HttpResponse.BodyHandlers.ofByteArray()));
+            }
+
+            List<Hit> hits = new ArrayList<>();
+            boolean more = false;
+            for (int p = 0; p < calls.size(); p++) {
+                HttpResponse<byte[]> resp;
+                try {
+                    resp = calls.get(p).join();
+                } catch (RuntimeException e) {
+                    code = writeJson(ex, 502, "{\"error\":\"partition " + p + " unavailable\"}");
+                    return;
+                }
+                if (resp.statusCode() != 200) {
+                    // bad requests fail the same way on every partition: pass the first one through
+                    code = resp.statusCode() >= 400 && resp.statusCode() < 500 ? resp.statusCode() : 502;
+                    writeJson(ex, code, code == 502 ? "{\"error\":\"partition " + p + " returned " + resp.statusCode() + "\"}"
+                            : new String(resp.body(), StandardCharsets.UTF_8));
+                    return;
+                }
+                more |= resp.headers().firstValue("X-Next-Cursor").isPresent();
+
+                // pages are small (limit/k), so the body is taken as bytes and cut into hits in place
+                String[] scores = resp.headers().firstValue("X-Scores").orElse("").split(",");
+                JsonMini.ArrayReader arr = new JsonMini.ArrayReader(new ByteArrayInputStream(resp.body()));
+                for (int i = 0; arr.next(); i++) {
+                    double score = ranked && i < scores.length && !scores[i].isEmpty() ? Double.parseDouble(scores[i]) : 0;
+                    hits.add(new Hit(hitId(arr.object()), score, arr.bytes()));
+                }
+            }
+
+            int limit;
+            if (ranked) {
+                limit = Integer.parseInt(q.get("k"));
+                hits.sort((a, b) -> a.score != b.score ? Double.compare(b.score, a.score) : Integer.compare(a.id, b.id));
+            } else {
+                limit = q.containsKey("limit") ? Integer.parseInt(q.get("limit")) : IncidentServer.DEFAULT_PAGE;
+                hits.sort(Comparator.comparingInt(h -> h.id));
+            }
+            if (hits.size() > limit) {
+                more = true;
+                hits = hits.subList(0, limit);
+            }
+
+            ByteArrayOutputStream body = new ByteArrayOutputStream(hits.size() * 512 + 2);
+            StringJoiner scores = new StringJoiner(",");
+            body.write('[');
+            for (Hit h : hits) {
+                if (body.size() > 1) body.write(',');
+                body.write(h.json);
+                scores.add(Double.toString(h.score));
+            }
+            body.write(']');
+            if (ranked) ex.getResponseHeaders().set("X-Scores", scores.toString());
+            else if (more && !hits.isEmpty()) ex.getResponseHeaders().set("X-Next-Cursor", IncidentServer.encodeCursor(hits.get(hits.size() - 1).id));
+            code = 200;
+            compression.writeJson(ex, code, body.toByteArray());
+        } catch (RuntimeException e) {
+            code = writeJson(ex, 502, "{\"error\":\"bad partition response\"}");
+        } finally {
+            long ns = System.nanoTime() - t0;
+            searchRoute.record(code, ns);
+            log("GET /incidents/search -> " + code + " in " + ns / 1_000_000 + "ms");
+        }
+    }
+
+    private void handleMetrics(HttpExchange ex) throws IOException {
+        byte[] bytes = metrics.renderPrometheus().getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        ex.sendResponseHeaders(200, bytes.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    private static int writeJson(HttpExchange ex, int code, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        ex.sendResponseHeaders(code, bytes.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(bytes);
+        }
+        return code;
+    }
+
+    private static void log(String message) {
+        AsyncLog.get("router.log").log(Instant.now(), Thread.currentThread().getName(), message);
+    }
+}
@@ -2,89 +2,494 @@ import com.sun.net.httpserver.*;
 
 import java.io.*;
 import java.net.InetSocketAddress;
-import java.net.URI;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.time.Instant;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
 
 public class IncidentServer {
 
-    private final ConcurrentHashMap<Integer, Incident> store = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, Set<Integer>> titleIndex = new ConcurrentHashMap<>();
+    private final IntObjectMap<Incident> store = new IntObjectMap<>();
+    private final InvertedIndex index = new InvertedIndex();
+    private final TrigramIndex trigrams = new TrigramIndex();
     private final AtomicInteger nextId = new AtomicInteger(1);
 
-    private final Object localFileLock = new Object();
-    private final Path localFile = Paths.get("storage", "local_incidents.ndjson");
+    // bumped on every write; with the startup epoch it forms the store-wide ETag
+    private final AtomicLong storeVersion = new AtomicLong();
+    private final String etagPrefix = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong cacheSeq = new AtomicLong();
+    private SearchCache searchCache = new SearchCache(1024, 64L << 20);
+    private TextArena textArena; // null: incident text stays on heap
+    private Compression compression = new Compression(1024);
+
+    private final Metrics metrics = new Metrics();
+    private final Metrics.Route getRoute = metrics.route("GET", "/incidents");
+    private final Metrics.Route postRoute = metrics.route("POST", "/incidents");
+    private final Metrics.Route putRoute = metrics.route("PUT", "/incidents");
+    private final Metrics.Route patchRoute = metrics.route("PATCH", "/incidents");
+    private final Metrics.Route deleteRoute = metrics.route("DELETE", "/incidents");
+    private final Metrics.Route otherRoute = metrics.route("OTHER", "/incidents");
+    private final Metrics.Route searchRoute = metrics.route("GET", "/incidents/search");
+    private final Metrics.Route bulkRoute = metrics.route("POST", "/incidents/_bulk");
+    private final Metrics.Histogram walAppend = metrics.histogram("incident_wal_append_duration_seconds");
+
+    private static final int BULK_BATCH = 5000;
+    static final int DEFAULT_PAGE = 100;
+    private static final int MAX_PAGE = 1000;
+    private static final long LOAD_WINDOW_BYTES = 64L << 20; // NDJSON parsed per window on startup
+    private static final int STREAM_HEAD_BYTES = 64 * 1024; // uncached pages above this are streamed chunked
+
+    // PUT/PATCH/DELETE of one id are serialized, so the store, the indexes and the log see
+    // its versions in the same order (j.u.c locks, see createExecutor)
+    private final ReentrantLock[] updateLocks = new ReentrantLock[64];
+
+    // Writes go to the WAL first and reach the store and the indexes only once durable, so a
+    // failed append leaves nothing visible. Read side: a write from its append until it is
+    // published, and the follower while it applies an incident; write side: snapshotIfChanged
+    // reading the WAL position, the store and the indexes as of one moment.
+    private final ReentrantReadWriteLock publishLock = new ReentrantReadWriteLock();
+
+    // local log compaction: rewrite once at least this share of it is superseded records
+    private static final double COMPACT_MIN_GARBAGE = 0.25;
+    private final AtomicLong updatesSinceCompaction = new AtomicLong(1); // 1: check once after start
+    private final AtomicLong compactions = new AtomicLong();
+
+    private final Path enrichedFile;
+    private final Path localFile;
+    private final Path snapshotFile;
+    private boolean snapshotsEnabled;
+
+    // partitioned mode (see IncidentRouter): only ids this process owns are loaded and assigned
+    private final Partition partition;
+    private final String serverLog;
+    private IncidentWal wal;
+
+    // incidents_enriched.ndjson as far as it is in the store (recorded in snapshots);
+    // advanced by the follower, -2 after a rewrite (no snapshot matches: reload on restart)
+    private volatile long enrichedSize = -1;
+    private volatile long enrichedMtime = -1;
+    private long lastSnapshotOffset = -1;
+    private long lastSnapshotEnrichedSize = -1;
+
+    // --follow: ids with local records that are not local creations (PUT/PATCH/DELETE of
+    // enriched incidents); lines the follower reads for them are ignored, the local log wins
+    private IntObjectMap<Boolean> localOverrides;
+    private EnrichedFollower follower;
+
+    public IncidentServer(Path storageDir, Path enrichedFile, Partition partition) {
+        this.enrichedFile = enrichedFile;
+        this.localFile = storageDir.resolve("local_incidents.ndjson");
+        this.snapshotFile = storageDir.resolve("snapshot.bin");
+        this.partition = partition;
+        this.serverLog = partition == null ? "server.log" : "server-p" + partition.index + ".log";
+        for (int i = 0; i < updateLocks.length; i++) updateLocks[i] = new ReentrantLock();
+
+        metrics.gauge("incident_store_size", store::size);
+        metrics.gauge("incident_index_terms", index::termCount);
+        metrics.gauge("incident_trigram_terms", trigrams::trigramCount);
+        metrics.gauge("incident_next_id", nextId::get);
+        metrics.counter("incident_search_cache_hits", () -> searchCache.hits());
+        metrics.counter("incident_search_cache_misses", () -> searchCache.misses());
+        metrics.counter("incident_search_cache_invalidations", () -> searchCache.invalidations());
+        metrics.gauge("incident_search_cache_entries", () -> searchCache.size());
+        metrics.gauge("incident_text_arena_bytes", () -> textArena == null ? 0 : textArena.usedBytes());
+        metrics.gauge("incident_local_log_bytes", () -> wal == null ? 0 : wal.durablePosition());
+        metrics.counter("incident_local_log_compactions", compactions::get);
+    }
 
     public static void main(String[] args) throws Exception {
         int port = 8080;
+        IncidentWal.Durability durability = IncidentWal.Durability.BATCH;
+        long fsyncMs = 50;
+        long snapshotSec = 300;
+        long compactSec = 600;
+        String executorKind = "fixed";
+        int threads = 0;
+        int searchCacheEntries = 1024;
+        String textStore = "heap";
+        int compressMin = 1024;
+        boolean follow = false;
+        long followPollMs = 1000;
+        Path storageDir = Paths.get("storage");
+        Path enriched = null;
+        Partition partition = null;
         for (int i = 0; i < args.length; i++) {
             if ("--port".equals(args[i]) && i + 1 < args.length) port = Integer.parseInt(args[++i]);
+            else if ("--durability".equals(args[i]) && i + 1 < args.length) durability = IncidentWal.Durability.parse(args[++i]);
+            else if ("--fsyncMs".equals(args[i]) && i + 1 < args.length) fsyncMs = Long.parseLong(args[++i]);
+            else if ("--snapshotSec".equals(args[i]) && i + 1 < args.length) snapshotSec = Long.parseLong(args[++i]);
+            else if ("--compactSec".equals(args[i]) && i + 1 < args.length) compactSec = Long.parseLong(args[++i]);
+            else if (args[i].startsWith("--executor=")) executorKind = args[i].substring("--executor=".length());
+            else if ("--executor".equals(args[i]) && i + 1 < args.length) executorKind = args[++i];
+            else if ("--threads".equals(args[i]) && i + 1 < args.length) threads = Integer.parseInt(args[++i]);
+            else if ("--searchCache".equals(args[i]) && i + 1 < args.length) searchCacheEntries = Integer.parseInt(args[++i]);
+            else if ("--textStore".equals(args[i]) && i + 1 < args.length) textStore = args[++i];
+            else if ("--compressMin".equals(args[i]) && i + 1 < args.length) compressMin = Integer.parseInt(args[++i]);
+            else if ("--follow".equals(args[i])) follow = true;
+            else if ("--followPollMs".equals(args[i]) && i + 1 < args.length) followPollMs = Long.parseLong(args[++i]);
+            else if ("--storage".equals(args[i]) && i + 1 < args.length) storageDir = Paths.get(args[++i]);
+            else if ("--enriched".equals(args[i]) && i + 1 < args.length) enriched = Paths.get(args[++i]);
+            else if ("--partition".equals(args[i]) && i + 1 < args.length) partition = Partition.parse(args[++i]);
         }
 
-        Files.createDirectories(Paths.get("storage"));
+        Files.createDirectories(storageDir);
         Files.createDirectories(Paths.get("logs"));
 
-        IncidentServer app = new IncidentServer();
+        // partitions on one host get their own --storage and share the enriched file via --enriched
+        if (enriched == null) enriched = storageDir.resolve("incidents_enriched.ndjson");
+        IncidentServer app = new IncidentServer(storageDir, enriched, partition);
+        app.searchCache = new SearchCache(searchCacheEntries, 64L << 20);
+        app.compression = new Compression(compressMin);
+        if (!"heap".equalsIgnoreCase(textStore)) {
+            app.textArena = new TextArena(TextArena.Kind.parse(textStore), storageDir.resolve("text.arena"));
+        }
         app.loadOnStart();
+        app.wal = new IncidentWal(app.localFile, durability, fsyncMs);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try { app.wal.close(); } catch (IOException ignored) { }
+        }, "wal-shutdown"));
+        if (follow) app.startFollowing(followPollMs);
+
+        // snapshots and compaction share one thread: both depend on the log offsets
+        if (snapshotSec > 0 || compactSec > 0) {
+            ScheduledExecutorService maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "snapshot");
+                t.setDaemon(true);
+                return t;
+            });
+            app.snapshotsEnabled = snapshotSec > 0;
+            if (snapshotSec > 0) maintenance.scheduleWithFixedDelay(app::snapshotIfChanged, snapshotSec, snapshotSec, TimeUnit.SECONDS);
+            if (compactSec > 0) maintenance.scheduleWithFixedDelay(app::compactIfWorthwhile, compactSec, compactSec, TimeUnit.SECONDS);
+        }
 
+        // headers and body go out as separate writes; with Nagle on, a small body waits for the
+        // client's delayed ACK (~40 ms per request, found with LoadGen)
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) System.setProperty("sun.net.httpserver.nodelay", "true");
         HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
         server.createContext("/incidents", app::handleIncidents);
         server.createContext("/incidents/search", app::handleSearch);
+        server.createContext("/incidents/_bulk", app::handleBulk);
+        server.createContext("/metrics", app::handleMetrics);
 
-        server.setExecutor(Executors.newFixedThreadPool(8));
+        server.setExecutor(createExecutor(executorKind, threads));
         server.start();
 
-        app.log("server.log", Instant.now(), "main",
-                "START port=" + port + " loaded=" + app.store.size() + " nextId=" + app.nextId.get());
+        app.log(app.serverLog, Instant.now(), "main",
+                "START port=" + port + " executor=" + executorKind + " durability=" + durability + " textStore=" + textStore +
+                        (follow ? " follow" : "") +
+                        (partition == null ? "" : " partition=" + partition) + " loaded=" + app.store.size() + " nextId=" + app.nextId.get());
 
         System.out.println("Server started on http://localhost:" + port);
     }
 
+    // fixed:    bounded pool, --threads (default 8)
+    // virtual:  one virtual thread per request (needs JDK 21+, otherwise falls back to a cached pool)
+    // forkjoin: work-stealing pool in async mode, --threads = parallelism (default: cores)
+    // Blocking on the request path (WAL ack, AsyncLog back-pressure, update and store locks)
+    // uses j.u.c locks/parking, so a virtual thread waiting there releases its carrier.
+    // Short synchronized sections remain and pin while they run: SearchCache get/put and
+    // invalidation, InvertedIndex posting-list add/remove, and TextArena.put, which also maps
+    // a new file segment there when a MAPPED arena fills up.
+    private static ExecutorService createExecutor(String kind, int threads) {
+        switch (kind.toLowerCase(Locale.ROOT)) {
+            case "fixed":
+                return Executors.newFixedThreadPool(threads > 0 ? threads : 8);
+            case "forkjoin":
+                return new ForkJoinPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors(),
+                        ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+            case "virtual":
+                try {
+                    return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                } catch (ReflectiveOperationException e) {
+                    System.err.println("Virtual threads are not available on this JDK, using a cached thread pool");
+                    return Executors.newCachedThreadPool();
+                }
+            default:
+                throw new IllegalArgumentException("unknown executor: " + kind + " (fixed|virtual|forkjoin)");
+        }
+    }
+
     private void loadOnStart() {
-        loadNdjsonIfExists(Paths.get("storage", "incidents_enriched.ndjson"));
-        loadNdjsonIfExists(localFile);
+        try {
+            if (Files.exists(enrichedFile)) {
+                enrichedSize = Files.size(enrichedFile);
+                enrichedMtime = Files.getLastModifiedTime(enrichedFile).toMillis();
+            }
+        } catch (IOException ignored) { }
 
-        int max = store.keySet().stream().mapToInt(Integer::intValue).max().orElse(0);
-        nextId.set(max + 1);
+        if (!loadFromSnapshot()) {
+            store.clear();
+            int max = loadNdjsonIfExists(enrichedFile, 0, false);
+            max = Math.max(max, loadNdjsonIfExists(localFile, 0, false));
+            nextId.set(max + 1);
 
-        rebuildIndex();
+            // arena-backed incidents are decoded one at a time here; addAll sets indexedLength
+            index.clear();
+            index.addAll(store.values());
+            trigrams.clear();
+            trigrams.addAll(store.values());
+        }
+        if (textArena != null) {
+            log(serverLog, Instant.now(), "main", "text arena: " + textArena.kind() +
+                    " used=" + textArena.usedBytes() + " capacity=" + textArena.capacityBytes());
+        }
+    }
+
+    // Replaces stored incidents by arena-backed copies. Called after indexing, which needs
+    // the heap strings and sets indexedLength; until then readers see the heap version.
+    private void moveTextOffHeap(Collection<Incident> incidents) {
+        if (textArena == null) return;
+        for (Incident inc : incidents) store.put(inc.id, inc.offHeapCopy(textArena));
     }
 
-    private void loadNdjsonIfExists(Path p) {
-        if (!Files.exists(p)) return;
-        try (BufferedReader r = Files.newBufferedReader(p, StandardCharsets.UTF_8)) {
-            String line;
-            while ((line = r.readLine()) != null) {
+    // Called before the HTTP server starts, so no update can slip between the log scan and
+    // the follower. Lines already loaded are not read again.
+    private void startFollowing(long pollMs) throws IOException {
+        IntObjectMap<Boolean> overrides = new IntObjectMap<>();
+        LogCompactor.scan(localFile, Long.MAX_VALUE, (inc, offset, length) -> {
+            if (inc.deleted || inc.createdAt == null) overrides.put(inc.id, Boolean.TRUE);
+        });
+        localOverrides = overrides;
+        follower = new EnrichedFollower(enrichedFile, enrichedSize, pollMs, this::applyEnriched,
+                m -> log(serverLog, Instant.now(), Thread.currentThread().getName(), m));
+        follower.start();
+    }
+
+    // Sink of the follower: new ids are added, changed ones re-indexed by diff, unchanged lines
+    // (e.g. a rewrite with the same content) skipped. Ids a rewritten file no longer has stay
+    // in the store until the next start, which then does a full load.
+    private void applyEnriched(NdjsonLoader.Result res, long end, boolean rewritten) {
+        int added = 0, changed = 0, skipped = 0;
+        for (List<Incident> chunk : res.chunks) {
+            for (Incident inc : chunk) {
+                nextId.accumulateAndGet(inc.id + 1, Math::max); // every partition counts every id, as on load
+                if (inc.deleted || (partition != null && !partition.owns(inc.id))) continue;
+                ReentrantLock lock = updateLock(inc.id);
+                lock.lock();
+                publishLock.readLock().lock();
                 try {
-                    Incident inc = Incident.fromNdjson(line);
-                    if (inc.id != null) store.put(inc.id, inc);
-                } catch (Exception ignored) { }
+                    Incident old = store.get(inc.id);
+                    if (localOverrides.containsKey(inc.id) || (old != null
+                            && (old.createdAt() != null || old.toJson().equals(inc.toJson())))) {
+                        skipped++;
+                        continue;
+                    }
+                    if (old != null) inc.version = old.version + 1;
+                    store.put(inc.id, inc);
+                    if (old == null) indexIncident(inc);
+                    else reindexIncident(old, inc);
+                    moveTextOffHeap(List.of(inc));
+                    storeVersion.incrementAndGet();
+                    if (old == null) {
+                        searchCache.onInsert(inc);
+                        added++;
+                    } else {
+                        searchCache.onUpdate(old, inc);
+                        changed++;
+                    }
+                } finally {
+                    publishLock.readLock().unlock();
+                    lock.unlock();
+                }
             }
-        } catch (IOException ignored) { }
+        }
+
+        if (rewritten || enrichedSize == -2) {
+            enrichedSize = -2;
+        } else {
+            try {
+                long mtime = Files.getLastModifiedTime(enrichedFile).toMillis();
+                if (Files.size(enrichedFile) == end) {
+                    enrichedMtime = mtime;
+                    enrichedSize = end;
+                }
+            } catch (IOException ignored) { }
+        }
+        log(serverLog, Instant.now(), Thread.currentThread().getName(),
+                "follow: added=" + added + " changed=" + changed + " skipped=" + skipped +
+                        " rejected=" + res.rejectedCount + " offset=" + end + (rewritten ? " (rewritten)" : ""));
     }
 
-    private void rebuildIndex() {
-        titleIndex.clear();
-        for (Incident inc : store.values()) {
-            indexIncidentTitle(inc);
+    // Snapshot + WAL tail. Falls back to a full load if the snapshot is missing, corrupt
+    // or was built from a different incidents_enriched.ndjson.
+    private boolean loadFromSnapshot() {
+        IncidentSnapshot.Header h;
+        try {
+            h = IncidentSnapshot.load(snapshotFile, store, index, trigrams.postings(), textArena);
+        } catch (IOException e) {
+            log(serverLog, Instant.now(), "main", "WARN: snapshot ignored: " + e.getMessage());
+            h = null;
         }
+        long localSize = -1;
+        try { if (Files.exists(localFile)) localSize = Files.size(localFile); } catch (IOException ignored) { }
+
+        if (h == null || h.enrichedSize != enrichedSize || h.enrichedMtime != enrichedMtime
+                || (h.localOffset > 0 && localSize < h.localOffset) || !ownsAll()) {
+            store.clear();
+            index.clear();
+            trigrams.clear();
+            if (textArena != null) textArena.clear();
+            return false;
+        }
+
+        int max = loadNdjsonIfExists(localFile, h.localOffset, true);
+        nextId.set(Math.max(h.nextId, max + 1));
+        lastSnapshotOffset = h.localOffset;
+        log(serverLog, Instant.now(), "main",
+                "snapshot loaded: incidents=" + store.size() + " replayedFrom=" + h.localOffset);
+        return true;
     }
 
-    private void indexIncidentTitle(Incident inc) {
-        if (inc.id == null) return;
-        String t = inc.title == null ? "" : inc.title.toLowerCase(Locale.ROOT);
-        for (String w : t.split("[^\\p{L}\\p{Nd}]+")) {
-            if (w.isBlank()) continue;
-            titleIndex.compute(w, (k, set) -> {
-                if (set == null) set = ConcurrentHashMap.newKeySet();
-                set.add(inc.id);
-                return set;
+    // False when the store holds ids this partition does not own, i.e. the snapshot was
+    // written under another partitioning.
+    private boolean ownsAll() {
+        if (partition == null) return true;
+        for (int id : store.keys()) {
+            if (!partition.owns(id)) return false;
+        }
+        return true;
+    }
+
+    // Loads lines starting at byte offset (parallel, memory-mapped); returns the max id seen (0 if none).
+    // Chunks are applied in file order, so a later line for the same id wins and a tombstone
+    // removes what was loaded before it. With addToIndex, replaced versions are re-indexed by diff.
+    // The file is parsed one window at a time; with a text arena each incident is stored as its
+    // arena copy right away, so the parsed heap strings of a window die before the next one.
+    private int loadNdjsonIfExists(Path p, long offset, boolean addToIndex) {
+        long[] foreign = new long[1];
+        NdjsonLoader.Result res;
+        try {
+            res = NdjsonLoader.load(p, offset, LOAD_WINDOW_BYTES, ForkJoinPool.commonPool(), chunk -> {
+                for (Incident inc : chunk) {
+                    if (partition != null && !partition.owns(inc.id)) {
+                        foreign[0]++;
+                        continue;
+                    }
+                    if (inc.deleted) {
+                        Incident old = store.remove(inc.id);
+                        if (addToIndex && old != null) unindexIncident(old);
+                        continue;
+                    }
+                    if (addToIndex) { // before the copy: indexing needs the text and sets indexedLength
+                        Incident old = store.get(inc.id);
+                        if (old == null) indexIncident(inc);
+                        else reindexIncident(old, inc);
+                    }
+                    store.put(inc.id, textArena == null ? inc : inc.offHeapCopy(textArena));
+                }
             });
+        } catch (IOException e) {
+            log(serverLog, Instant.now(), "main", "ERROR load " + p + ": " + e.getMessage());
+            return 0;
+        }
+        if (res.lines > 0) {
+            log(serverLog, Instant.now(), "main", (res.rejectedCount > 0 ? "WARN load " : "load ") + res.summary());
+        }
+        if (foreign[0] > 0 && p.equals(localFile)) {
+            // written by this partition under another --partition count (or another Partition.owner)
+            log(serverLog, Instant.now(), "main", "WARN load " + p + ": " + foreign[0] +
+                    " records belong to other partitions and were skipped; re-shard the local logs");
+        }
+        return res.maxId;
+    }
+
+    private int indexedLength(int id) {
+        Incident inc = store.get(id);
+        return inc == null ? 0 : inc.indexedLength;
+    }
+
+    private void indexIncident(Incident inc) {
+        index.add(inc);
+        trigrams.add(inc);
+    }
+
+    private void reindexIncident(Incident old, Incident now) {
+        index.update(old, now);
+        trigrams.update(old, now);
+    }
+
+    private void unindexIncident(Incident old) {
+        index.remove(old);
+        trigrams.remove(old);
+    }
+
+    // Appends one record and waits until it is durable (group commit). Callers hold
+    // publishLock's read side and publish only after this returns.
+    private void persist(byte[] record) throws Exception {
+        long w0 = System.nanoTime();
+        wal.append(record).get();
+        walAppend.recordNanos(System.nanoTime() - w0);
+    }
+
+    // Called periodically; writes a new snapshot when the WAL moved since the last one.
+    // The WAL offset, the store and both indexes are read under publishLock's write side, so
+    // they describe the same moment: replay diffs the tail against the snapshot copy of each
+    // record, which only works when its postings are that copy's. Writers wait while the
+    // snapshot is serialized; the fsync runs after they are let go.
+    private void snapshotIfChanged() {
+        if (wal.durablePosition() == lastSnapshotOffset && enrichedSize == lastSnapshotEnrichedSize) return;
+        try {
+            long t0 = System.nanoTime();
+            long offset;
+            long enriched;
+            Path tmp;
+            publishLock.writeLock().lock();
+            try {
+                offset = wal.durablePosition();
+                enriched = enrichedSize;
+                IncidentSnapshot.Header h = new IncidentSnapshot.Header(enriched, enrichedMtime, offset, nextId.get());
+                tmp = IncidentSnapshot.writeTemp(snapshotFile, h, store.values(), index, trigrams.postings());
+            } finally {
+                publishLock.writeLock().unlock();
+            }
+            long locked = System.nanoTime() - t0;
+            IncidentSnapshot.commit(tmp, snapshotFile);
+            lastSnapshotOffset = offset;
+            lastSnapshotEnrichedSize = enriched;
+            log(serverLog, Instant.now(), Thread.currentThread().getName(),
+                    "snapshot written: incidents=" + store.size() + " offset=" + offset +
+                            " in " + (System.nanoTime() - t0) / 1_000_000 + "ms (writers held " + locked / 1_000_000 + "ms)");
+        } catch (Exception e) {
+            log(serverLog, Instant.now(), Thread.currentThread().getName(), "ERROR snapshot: " + e.getMessage());
+        }
+    }
+
+    // Rewrites the local log without superseded records (see LogCompactor) when updates or
+    // deletes happened since the last run and at least COMPACT_MIN_GARBAGE of it would go.
+    // The snapshot refers to offsets of the old file, so it is deleted before the swap and
+    // written again right after it.
+    private void compactIfWorthwhile() {
+        if (updatesSinceCompaction.get() == 0) return;
+        Path tmp = localFile.resolveSibling(localFile.getFileName() + ".compact");
+        try {
+            long t0 = System.nanoTime();
+            long pending = updatesSinceCompaction.get();
+            LogCompactor.Plan plan = LogCompactor.plan(localFile, wal.durablePosition());
+            if (plan.droppedBytes() < plan.upTo * COMPACT_MIN_GARBAGE) {
+                updatesSinceCompaction.addAndGet(-pending);
+                return;
+            }
+            LogCompactor.write(localFile, plan, tmp);
+            Files.deleteIfExists(snapshotFile);
+            lastSnapshotOffset = -1;
+            long size = wal.replace(tmp, plan.upTo).get();
+            updatesSinceCompaction.addAndGet(-pending);
+            compactions.incrementAndGet();
+            log(serverLog, Instant.now(), Thread.currentThread().getName(),
+                    "local log compacted: " + plan.summary() + " size=" + size +
+                            " in " + (System.nanoTime() - t0) / 1_000_000 + "ms");
+            if (snapshotsEnabled) snapshotIfChanged();
+        } catch (Exception e) {
+            log(serverLog, Instant.now(), Thread.currentThread().getName(), "ERROR compaction: " + e.getMessage());
+            try { Files.deleteIfExists(tmp); } catch (IOException ignored) { }
         }
     }
 
@@ -94,22 +499,11 @@ public class IncidentServer {
 
         try {
             String method = ex.getRequestMethod();
-            URI uri = ex.getRequestURI();
 
             if ("GET".equalsIgnoreCase(method)) {
-                Map<String, String> q = parseQuery(uri.getRawQuery());
-                String idStr = q.get("id");
-                if (idStr == null) {
-                    code = 400;
-                    writeJson(ex, code, "{\"error\":\"missing id\"}");
-                    return;
-                }
-
-                Integer id;
-                try { id = Integer.parseInt(idStr); }
-                catch (NumberFormatException nfe) {
+                Integer id = idParam(ex);
+                if (id == null) {
                     code = 400;
-                    writeJson(ex, code, "{\"error\":\"bad id\"}");
                     return;
                 }
 
@@ -120,15 +514,24 @@ public class IncidentServer {
                     return;
                 }
 
+                String etag = incidentTag(inc);
+                ex.getResponseHeaders().set("ETag", etag);
+                if (etagMatches(ex.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+                    code = 304;
+                    ex.sendResponseHeaders(code, -1);
+                    ex.close();
+                    return;
+                }
+
                 code = 200;
-                writeJson(ex, code, inc.toJson());
+                compression.writeJson(ex, code, inc.toJsonBytes(), inc.compressedJson());
                 return;
             }
 
             if ("POST".equalsIgnoreCase(method)) {
-                String body = readAll(ex.getRequestBody());
-                String title = JsonMini.getStringOrNull(body, "title");
-                String text = JsonMini.getStringOrNull(body, "body");
+                String[] fields = titleAndBody(ex.getRequestBody().readAllBytes());
+                String title = fields[0];
+                String text = fields[1];
 
                 if (title == null || text == null || title.isBlank() || text.isBlank()) {
                     code = 400;
@@ -136,30 +539,35 @@ public class IncidentServer {
                     return;
                 }
 
-                int id = nextId.getAndIncrement();
-                Incident inc = new Incident();
-                inc.id = id;
-                inc.title = title;
-                inc.body = text;
-                inc.createdAt = Instant.now().toString();
-                inc.commentsCount = 0;
-                inc.uniqueEmailsCount = 0;
-
-                store.put(id, inc);
-                indexIncidentTitle(inc);
-
-                // append local storage safely
-                String line = inc.toJson();
-                synchronized (localFileLock) {
-                    try (BufferedWriter w = Files.newBufferedWriter(localFile, StandardCharsets.UTF_8,
-                            StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
-                        w.write(line);
-                        w.newLine();
-                    }
+                int id = allocateIds(1)[0];
+                Incident inc = newLocalIncident(id, title, text);
+
+                // group commit: stored and 201 only after the batch with this record is durable
+                byte[] json = inc.toJsonBytes();
+                publishLock.readLock().lock();
+                try {
+                    persist(walLine(json));
+                    store.put(id, inc);
+                    indexIncident(inc);
+                    moveTextOffHeap(List.of(inc));
+                    storeVersion.incrementAndGet();
+                    searchCache.onInsert(inc);
+                } finally {
+                    publishLock.readLock().unlock();
                 }
 
                 code = 201;
-                writeJson(ex, code, inc.toJson());
+                compression.writeJson(ex, code, json);
+                return;
+            }
+
+            if ("PUT".equalsIgnoreCase(method) || "PATCH".equalsIgnoreCase(method) || "DELETE".equalsIgnoreCase(method)) {
+                Integer id = idParam(ex);
+                if (id == null) {
+                    code = 400;
+                    return;
+                }
+                code = "DELETE".equalsIgnoreCase(method) ? deleteIncident(ex, id) : updateIncident(ex, id, "PATCH".equalsIgnoreCase(method));
                 return;
             }
 
@@ -170,13 +578,287 @@ public class IncidentServer {
             code = 500;
             writeJson(ex, code, "{\"error\":\"internal\"}");
         } finally {
-            long ms = (System.nanoTime() - t0) / 1_000_000;
-            log("server.log", Instant.now(), Thread.currentThread().getName(),
+            long ns = System.nanoTime() - t0;
+            String m = ex.getRequestMethod();
+            routeFor(m).record(code, ns);
+            long ms = ns / 1_000_000;
+            log(serverLog, Instant.now(), Thread.currentThread().getName(),
                     ex.getRequestMethod() + " " + ex.getRequestURI().getPath() +
                             " -> " + code + " in " + ms + "ms");
         }
     }
 
+    private Metrics.Route routeFor(String method) {
+        switch (method.toUpperCase(Locale.ROOT)) {
+            case "GET": return getRoute;
+            case "POST": return postRoute;
+            case "PUT": return putRoute;
+            case "PATCH": return patchRoute;
+            case "DELETE": return deleteRoute;
+            default: return otherRoute;
+        }
+    }
+
+    // ?id= of a single-incident request; null after answering 400 when it is missing or bad.
+    private static Integer idParam(HttpExchange ex) throws IOException {
+        String idStr = parseQuery(ex.getRequestURI().getRawQuery()).get("id");
+        if (idStr == null) {
+            writeJson(ex, 400, "{\"error\":\"missing id\"}");
+            return null;
+        }
+        try {
+            return Integer.parseInt(idStr);
+        } catch (NumberFormatException nfe) {
+            writeJson(ex, 400, "{\"error\":\"bad id\"}");
+            return null;
+        }
+    }
+
+    private String incidentTag(Incident inc) {
+        return "\"" + etagPrefix + "-" + inc.id + "-" + inc.version + "\"";
+    }
+
+    private ReentrantLock updateLock(int id) {
+        // not Partition.owner: within a partition that hash is fixed by the partition, and only
+        // a share of the stripes would ever be used
+        int h = id * 0x7FEB352D;
+        return updateLocks[(h ^ (h >>> 15)) & (updateLocks.length - 1)];
+    }
+
+    // PUT replaces title and body (both required), PATCH changes the ones given; the other
+    // fields are managed by the server and kept. If-Match (an ETag from GET) makes it conditional.
+    // The new version replaces the old one in the store; the indexes get the term diff only.
+    private int updateIncident(HttpExchange ex, int id, boolean patch) throws Exception {
+        String[] fields = titleAndBody(ex.getRequestBody().readAllBytes());
+        String title = fields[0];
+        String text = fields[1];
+        boolean valid = patch
+                ? (title != null || text != null) && (title == null || !title.isBlank()) && (text == null || !text.isBlank())
+                : title != null && text != null && !title.isBlank() && !text.isBlank();
+        if (!valid) {
+            writeJson(ex, 400, "{\"error\":\"" + (patch ? "nothing to change" : "missing title/body") + "\"}");
+            return 400;
+        }
+
+        // the id's lock is held until the new version is durable and published, so the
+        // next update of it starts from this one
+        Incident now;
+        byte[] json;
+        ReentrantLock lock = updateLock(id);
+        lock.lock();
+        publishLock.readLock().lock();
+        try {
+            Incident old = store.get(id);
+            int refused = checkPrecondition(ex, old);
+            if (refused != 0) return refused;
+
+            now = old.withText(title != null ? title : old.title(), text != null ? text : old.body());
+            json = now.toJsonBytes();
+            persist(walLine(json));
+            if (localOverrides != null) localOverrides.put(id, Boolean.TRUE);
+            store.put(id, now);
+            reindexIncident(old, now);
+            moveTextOffHeap(List.of(now));
+            storeVersion.incrementAndGet();
+            searchCache.onUpdate(old, now);
+        } finally {
+            publishLock.readLock().unlock();
+            lock.unlock();
+        }
+        updatesSinceCompaction.incrementAndGet();
+
+        ex.getResponseHeaders().set("ETag", incidentTag(now));
+        compression.writeJson(ex, 200, json);
+        return 200;
+    }
+
+    // Removes the incident from the store and the indexes and logs a tombstone.
+    private int deleteIncident(HttpExchange ex, int id) throws Exception {
+        ReentrantLock lock = updateLock(id);
+        lock.lock();
+        publishLock.readLock().lock();
+        try {
+            Incident old = store.get(id);
+            int refused = checkPrecondition(ex, old);
+            if (refused != 0) return refused;
+
+            persist(walLine(Incident.tombstone(id)));
+            if (localOverrides != null) localOverrides.put(id, Boolean.TRUE);
+            store.remove(id);
+            unindexIncident(old);
+            storeVersion.incrementAndGet();
+            searchCache.onUpdate(old, null);
+        } finally {
+            publishLock.readLock().unlock();
+            lock.unlock();
+        }
+        updatesSinceCompaction.incrementAndGet();
+
+        ex.sendResponseHeaders(204, -1);
+        ex.close();
+        return 204;
+    }
+
+    // 404 for a missing incident, 412 when If-Match names another version; 0 to go ahead.
+    private int checkPrecondition(HttpExchange ex, Incident current) throws IOException {
+        if (current == null) {
+            writeJson(ex, 404, "{\"error\":\"not found\"}");
+            return 404;
+        }
+        String ifMatch = ex.getRequestHeaders().getFirst("If-Match");
+        if (ifMatch != null && !etagMatches(ifMatch, incidentTag(current))) {
+            writeJson(ex, 412, "{\"error\":\"precondition failed\"}");
+            return 412;
+        }
+        return 0;
+    }
+
+    private static byte[] walLine(byte[] json) {
+        byte[] line = Arrays.copyOf(json, json.length + 1);
+        line[json.length] = '\n';
+        return line;
+    }
+
+    private static Incident newLocalIncident(int id, String title, String body) {
+        Incident inc = new Incident();
+        inc.id = id;
+        inc.title = title;
+        inc.body = body;
+        inc.createdAt = Instant.now().toString();
+        inc.commentsCount = 0;
+        inc.uniqueEmailsCount = 0;
+        return inc;
+    }
+
+    // POST /incidents/_bulk: NDJSON body, one {"title","body"} object per line.
+    // Lines are handled in batches: one id allocation, one bulk index update and
+    // one WAL write+sync per batch. The response streams one result line per input line:
+    // {"line":N,"id":ID} or {"line":N,"error":"..."}.
+    private void handleBulk(HttpExchange ex) throws IOException {
+        long t0 = System.nanoTime();
+        int code = 500;
+        long ok = 0;
+        long failed = 0;
+
+        try {
+            if (!"POST".equalsIgnoreCase(ex.getRequestMethod())) {
+                code = 405;
+                writeJson(ex, code, "{\"error\":\"method not allowed\"}");
+                return;
+            }
+
+            code = 200;
+            ex.getResponseHeaders().set("Content-Type", "application/x-ndjson; charset=utf-8");
+            ex.sendResponseHeaders(code, 0);
+
+            try (InputStream in = ex.getRequestBody();
+                 Writer out = new BufferedWriter(new OutputStreamWriter(ex.getResponseBody(), StandardCharsets.UTF_8), 16 * 1024)) {
+
+                ByteLines r = new ByteLines(in);
+                int lineNo = 0;
+                List<Integer> lineNos = new ArrayList<>(BULK_BATCH);
+                List<String[]> fields = new ArrayList<>(BULK_BATCH);
+                boolean line;
+                while (true) {
+                    line = r.next();
+                    if (line) {
+                        lineNo++;
+                        if (JsonMini.isBlank(r.buf, r.from, r.to)) continue;
+                        String[] tb = titleAndBody(r.buf, r.from, r.to);
+                        String title = tb[0], text = tb[1];
+                        if (title == null || text == null || title.isBlank() || text.isBlank()) {
+                            out.write("{\"line\":" + lineNo + ",\"error\":\"missing title/body\"}\n");
+                            failed++;
+                            continue;
+                        }
+                        lineNos.add(lineNo);
+                        fields.add(tb);
+                    }
+                    if (fields.size() == BULK_BATCH || (!line && !fields.isEmpty())) {
+                        boolean persisted = commitBulkBatch(fields, lineNos, out);
+                        if (persisted) ok += fields.size();
+                        else failed += fields.size();
+                        lineNos.clear();
+                        fields.clear();
+                        out.flush();
+                    }
+                    if (!line) break;
+                }
+            }
+        } catch (Exception e) {
+            if (code != 200) {
+                code = 500;
+                writeJson(ex, code, "{\"error\":\"internal\"}");
+            }
+        } finally {
+            long ns = System.nanoTime() - t0;
+            bulkRoute.record(code, ns);
+            log(serverLog, Instant.now(), Thread.currentThread().getName(),
+                    "POST /incidents/_bulk -> " + code + " ok=" + ok + " failed=" + failed +
+                            " in " + ns / 1_000_000 + "ms");
+        }
+    }
+
+    // Ids for n new incidents. Unpartitioned this is one contiguous range; a partition skips
+    // the ids other partitions own, so ids stay unique across the cluster without coordination.
+    // Loaded ids of every partition count towards nextId (see loadNdjsonIfExists).
+    private int[] allocateIds(int n) {
+        int[] ids = new int[n];
+        if (partition == null) {
+            int first = nextId.getAndAdd(n);
+            for (int i = 0; i < n; i++) ids[i] = first + i;
+            return ids;
+        }
+        for (int i = 0; i < n; i++) {
+            int id;
+            do { id = nextId.getAndIncrement(); } while (!partition.owns(id));
+            ids[i] = id;
+        }
+        return ids;
+    }
+
+    // Assigns ids for the batch in one step, persists it as one WAL record and, once that is
+    // durable, stores and indexes it. A failed append publishes nothing.
+    private boolean commitBulkBatch(List<String[]> fields, List<Integer> lineNos, Writer out) throws IOException {
+        int n = fields.size();
+        int[] ids = allocateIds(n);
+
+        List<Incident> batch = new ArrayList<>(n);
+        JsonMini.ByteWriter walRecord = new JsonMini.ByteWriter(n * 256); // the batch's lines, encoded in place
+        for (int i = 0; i < n; i++) {
+            Incident inc = newLocalIncident(ids[i], fields.get(i)[0], fields.get(i)[1]);
+            batch.add(inc);
+            inc.writeJson(walRecord);
+            walRecord.raw('\n');
+        }
+
+        boolean persisted = true;
+        publishLock.readLock().lock();
+        try {
+            try {
+                persist(walRecord.toByteArray());
+            } catch (Exception e) {
+                persisted = false;
+            }
+            if (persisted) {
+                for (Incident inc : batch) store.put(inc.id, inc);
+                index.addAll(batch);
+                trigrams.addAll(batch);
+                moveTextOffHeap(batch);
+                storeVersion.incrementAndGet();
+                for (Incident inc : batch) searchCache.onInsert(inc);
+            }
+        } finally {
+            publishLock.readLock().unlock();
+        }
+
+        for (int i = 0; i < n; i++) {
+            if (persisted) out.write("{\"line\":" + lineNos.get(i) + ",\"id\":" + ids[i] + "}\n");
+            else out.write("{\"line\":" + lineNos.get(i) + ",\"error\":\"persist failed\"}\n");
+        }
+        return persisted;
+    }
+
     private void handleSearch(HttpExchange ex) throws IOException {
         long t0 = System.nanoTime();
         int code = 500;
@@ -197,58 +879,269 @@ public class IncidentServer {
             }
 
             String qLower = query.toLowerCase(Locale.ROOT).trim();
+            String modeParam = q.get("mode");
+            boolean substring = "substring".equalsIgnoreCase(modeParam);
+
+            InvertedIndex.Mode mode;
+            try { mode = substring ? InvertedIndex.Mode.AND : InvertedIndex.Mode.parse(modeParam); }
+            catch (IllegalArgumentException iae) {
+                code = 400;
+                writeJson(ex, code, "{\"error\":\"bad mode\"}");
+                return;
+            }
 
-            // быстрый путь по индексу: если один “токен”
-            Set<Integer> candidates = null;
-            String[] tokens = qLower.split("[^\\p{L}\\p{Nd}]+");
-            List<String> toks = new ArrayList<>();
-            for (String t : tokens) if (!t.isBlank()) toks.add(t);
+            int limit;
+            int after;
+            try {
+                limit = q.containsKey("limit") ? Integer.parseInt(q.get("limit")) : DEFAULT_PAGE;
+                after = q.containsKey("cursor") ? decodeCursor(q.get("cursor")) : 0;
+            } catch (IllegalArgumentException iae) {
+                code = 400;
+                writeJson(ex, code, "{\"error\":\"bad limit/cursor\"}");
+                return;
+            }
+            if (limit < 1 || limit > MAX_PAGE) {
+                code = 400;
+                writeJson(ex, code, "{\"error\":\"limit must be 1.." + MAX_PAGE + "\"}");
+                return;
+            }
 
-            if (toks.size() == 1) {
-                candidates = titleIndex.getOrDefault(toks.get(0), Collections.emptySet());
+            // индекс по title+body: and (default) / or / phrase
+            List<String> toks = InvertedIndex.tokens(qLower);
+            boolean useIndex = !substring && !toks.isEmpty();
+
+            // ranked: top k by BM25, best first (no cursor, ranking is not id-ordered)
+            int k = 0;
+            if (q.containsKey("k")) {
+                try { k = Integer.parseInt(q.get("k")); }
+                catch (NumberFormatException nfe) { k = -1; }
+                if (k < 1 || k > MAX_PAGE || !useIndex || q.containsKey("cursor")) {
+                    code = 400;
+                    writeJson(ex, code, "{\"error\":\"k must be 1.." + MAX_PAGE + ", needs a word query and no cursor\"}");
+                    return;
+                }
             }
 
-            List<String> results = new ArrayList<>();
-            if (candidates != null) {
-                for (Integer id : candidates) {
+            // conditional GET: nothing was written since the client's copy
+            long version = storeVersion.get();
+            String storeTag = "\"v" + etagPrefix + "-" + version + "\"";
+            String cacheKey = (useIndex ? mode + "|" + String.join(" ", toks) : "substring|" + qLower) +
+                    "|" + limit + "|" + after + "|" + k;
+            SearchCache.Entry cached = searchCache.enabled() ? searchCache.get(cacheKey) : null;
+            String inm = ex.getRequestHeaders().getFirst("If-None-Match");
+            if (etagMatches(inm, storeTag) || (cached != null && etagMatches(inm, cached.etag))) {
+                code = 304;
+                ex.getResponseHeaders().set("ETag", cached != null ? cached.etag : storeTag);
+                ex.sendResponseHeaders(code, -1);
+                ex.close();
+                return;
+            }
+            if (cached != null) {
+                if (cached.nextCursor != null) ex.getResponseHeaders().set("X-Next-Cursor", cached.nextCursor);
+                if (cached.scores != null) ex.getResponseHeaders().set("X-Scores", cached.scores);
+                ex.getResponseHeaders().set("ETag", cached.etag);
+                code = 200;
+                compression.writeJson(ex, code, cached.body, cached.compressed);
+                return;
+            }
+
+            List<Incident> page;
+            String nextCursor = null;
+            String scores = null;
+            if (k > 0) {
+                page = new ArrayList<>(k);
+                double[] score = new double[k];
+                int[] top = index.topK(toks, mode, k, this::indexedLength, id -> {
+                    if (mode != InvertedIndex.Mode.PHRASE) return true;
                     Incident inc = store.get(id);
-                    if (inc != null) results.add(inc.toJson());
+                    return inc != null && InvertedIndex.containsPhrase(inc, toks); // null: deleted meanwhile
+                }, score);
+                // X-Scores lets IncidentRouter merge ranked results from several partitions
+                StringJoiner sj = new StringJoiner(",");
+                for (int i = 0; i < top.length; i++) {
+                    Incident inc = store.get(top[i]);
+                    if (inc == null) continue;
+                    page.add(inc);
+                    sj.add(Double.toString(score[i]));
                 }
+                scores = sj.toString();
             } else {
-                // fallback: substring search по title/body
-                for (Incident inc : store.values()) {
-                    String t = (inc.title == null ? "" : inc.title).toLowerCase(Locale.ROOT);
-                    String b = (inc.body == null ? "" : inc.body).toLowerCase(Locale.ROOT);
-                    if (t.contains(qLower) || b.contains(qLower)) {
-                        results.add(inc.toJson());
-                    }
+                // candidate ids in ascending order, produced lazily; pages are cut by id so the
+                // order is stable, and only limit + 1 matches are ever looked at
+                PrimitiveIterator.OfInt ids;
+                if (useIndex) {
+                    ids = index.cursor(toks, mode, after);
+                } else if (TrigramIndex.usable(qLower)) {
+                    ids = trigrams.candidates(qLower, after);
+                } else {
+                    ids = storeCursor(after, limit + 1, inc -> containsText(inc, qLower));
                 }
-            }
 
-            StringBuilder sb = new StringBuilder();
-            sb.append("[");
-            for (int i = 0; i < results.size(); i++) {
-                if (i > 0) sb.append(",");
-                sb.append(results.get(i));
+                page = new ArrayList<>();
+                boolean hasMore = false;
+                while (ids.hasNext()) {
+                    Incident inc = store.get(ids.nextInt());
+                    if (inc == null) continue;
+                    boolean match;
+                    if (useIndex) {
+                        match = mode != InvertedIndex.Mode.PHRASE || InvertedIndex.containsPhrase(inc, toks);
+                    } else {
+                        match = containsText(inc, qLower);
+                    }
+                    if (!match) continue;
+                    if (page.size() == limit) {
+                        hasMore = true;
+                        break;
+                    }
+                    page.add(inc);
+                }
+                if (hasMore) nextCursor = encodeCursor(page.get(page.size() - 1).id);
             }
-            sb.append("]");
 
+            if (nextCursor != null) ex.getResponseHeaders().set("X-Next-Cursor", nextCursor);
+            if (scores != null) ex.getResponseHeaders().set("X-Scores", scores);
             code = 200;
-            writeJson(ex, code, sb.toString());
+
+            // serialize until the page is too big to cache (and to hold as one buffer); the rest
+            // of a larger page is streamed one incident at a time
+            int cacheable = searchCache.enabled() ? searchCache.maxEntryBytes() : -1;
+            long bound = Math.max(cacheable, STREAM_HEAD_BYTES);
+            List<byte[]> parts = new ArrayList<>(page.size());
+            long size = 2 + Math.max(0, page.size() - 1);
+            for (Incident inc : page) {
+                if (size > bound) break;
+                byte[] json = inc.toJsonBytes();
+                parts.add(json);
+                size += json.length;
+            }
+            if (parts.size() < page.size() || size > bound) {
+                ex.getResponseHeaders().set("ETag", storeTag);
+                writeJsonArray(ex, code, page, parts, size);
+            } else if (size <= cacheable) {
+                // small enough to cache: build once, keep it unless an insert touches the query
+                byte[] body = concatJsonArray(parts, (int) size);
+                String etag = "\"q" + etagPrefix + "-" + cacheSeq.incrementAndGet() + "\"";
+                SearchCache.Entry entry = new SearchCache.Entry(cacheKey, body, nextCursor, scores, etag, !useIndex,
+                        mode == InvertedIndex.Mode.OR, new HashSet<>(toks), qLower);
+                if (searchCache.put(entry, storeVersion, version)) {
+                    ex.getResponseHeaders().set("ETag", etag);
+                    compression.writeJson(ex, code, body, entry.compressed);
+                } else {
+                    ex.getResponseHeaders().set("ETag", storeTag);
+                    compression.writeJson(ex, code, body);
+                }
+            } else {
+                ex.getResponseHeaders().set("ETag", storeTag);
+                compression.writeJson(ex, code, concatJsonArray(parts, (int) size));
+            }
 
         } catch (Exception e) {
             code = 500;
             writeJson(ex, code, "{\"error\":\"internal\"}");
         } finally {
-            long ms = (System.nanoTime() - t0) / 1_000_000;
-            log("server.log", Instant.now(), Thread.currentThread().getName(),
+            long ns = System.nanoTime() - t0;
+            searchRoute.record(code, ns);
+            long ms = ns / 1_000_000;
+            log(serverLog, Instant.now(), Thread.currentThread().getName(),
                     ex.getRequestMethod() + " " + ex.getRequestURI().getPath() +
                             " -> " + code + " in " + ms + "ms");
         }
     }
 
+    // Prometheus text exposition format.
+    private void handleMetrics(HttpExchange ex) throws IOException {
+        if (!"GET".equalsIgnoreCase(ex.getRequestMethod())) {
+            writeJson(ex, 405, "{\"error\":\"method not allowed\"}");
+            return;
+        }
+        byte[] bytes = metrics.renderPrometheus().getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        ex.sendResponseHeaders(200, bytes.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    // Streams the page as a JSON array of unknown length (chunked): the serialized head first,
+    // then the remaining incidents one at a time. headSize (at least) sizes the encoding choice.
+    private void writeJsonArray(HttpExchange ex, int code, List<Incident> page, List<byte[]> head, long headSize)
+            throws IOException {
+        try (OutputStream os = new BufferedOutputStream(compression.openJsonStream(ex, code, headSize), 16 * 1024)) {
+            os.write('[');
+            for (int i = 0; i < page.size(); i++) {
+                if (i > 0) os.write(',');
+                os.write(i < head.size() ? head.get(i) : page.get(i).toJsonBytes());
+            }
+            os.write(']');
+        }
+    }
+
+    // Stored ids greater than after, ascending, for queries no index narrows. Ids are handed out
+    // densely, so walking the id range stops as soon as the page is full. A sparse range (large
+    // imported ids) is instead read in one pass that keeps only the n smallest matching ids.
+    private PrimitiveIterator.OfInt storeCursor(int after, int n, Predicate<Incident> match) {
+        int end = nextId.get();
+        if (after >= end - 1) return IntStream.empty().iterator();
+        if ((long) end - after <= 4L * store.size() + 1024) return IntStream.range(after + 1, end).iterator();
+
+        PriorityQueue<Integer> smallest = new PriorityQueue<>(n + 1, Comparator.reverseOrder());
+        store.forEach((id, inc) -> {
+            if (id <= after || (smallest.size() == n && id >= smallest.peek()) || !match.test(inc)) return;
+            smallest.add(id);
+            if (smallest.size() > n) smallest.poll();
+        });
+        return smallest.stream().mapToInt(Integer::intValue).sorted().iterator();
+    }
+
+    // fallback: substring search по title/body
+    private static boolean containsText(Incident inc, String qLower) {
+        String t = inc.title(), b = inc.body();
+        t = t == null ? "" : t.toLowerCase(Locale.ROOT);
+        b = b == null ? "" : b.toLowerCase(Locale.ROOT);
+        return t.contains(qLower) || b.contains(qLower);
+    }
+
+    private static byte[] concatJsonArray(List<byte[]> items, int size) {
+        byte[] out = new byte[size];
+        int pos = 0;
+        out[pos++] = '[';
+        for (int i = 0; i < items.size(); i++) {
+            if (i > 0) out[pos++] = ',';
+            byte[] r = items.get(i);
+            System.arraycopy(r, 0, out, pos, r.length);
+            pos += r.length;
+        }
+        out[pos] = ']';
+        return out;
+    }
+
+    // If-None-Match: "*", a single tag or a comma separated list (weak W/ prefix ignored).
+    private static boolean etagMatches(String header, String etag) {
+        if (header == null) return false;
+        for (String t : header.split(",")) {
+            t = t.trim();
+            if (t.startsWith("W/")) t = t.substring(2);
+            if (t.equals("*") || t.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    static String encodeCursor(int lastId) {
+        byte[] raw = ("a:" + lastId).getBytes(StandardCharsets.US_ASCII);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
+    }
+
+    private static int decodeCursor(String cursor) {
+        String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+        if (!raw.startsWith("a:")) throw new IllegalArgumentException("bad cursor");
+        return Integer.parseInt(raw.substring(2));
+    }
+
     private static void writeJson(HttpExchange ex, int code, String json) throws IOException {
-        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        writeJson(ex, code, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeJson(HttpExchange ex, int code, byte[] bytes) throws IOException {
         ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
         ex.sendResponseHeaders(code, bytes.length);
         try (OutputStream os = ex.getResponseBody()) {
@@ -256,15 +1149,77 @@ public class IncidentServer {
         }
     }
 
-    private static String readAll(InputStream is) throws IOException {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        byte[] buf = new byte[4096];
-        int n;
-        while ((n = is.read(buf)) != -1) bos.write(buf, 0, n);
-        return bos.toString(StandardCharsets.UTF_8);
+    private static final JsonMini.Keys TITLE_BODY = new JsonMini.Keys("title", "body");
+
+    private static String[] titleAndBody(byte[] json) {
+        return titleAndBody(json, 0, json.length);
+    }
+
+    // {title, body} of a request object in one pass over its UTF-8 bytes; nulls for missing
+    // fields or bad JSON.
+    private static String[] titleAndBody(byte[] buf, int from, int to) {
+        String[] tb = new String[2];
+        try {
+            JsonMini.ObjectReader r = new JsonMini.ObjectReader(buf, from, to);
+            while (r.nextKey()) {
+                int k = r.key(TITLE_BODY);
+                if (k >= 0) tb[k] = r.stringOrNull();
+            }
+        } catch (IllegalArgumentException e) {
+            tb[0] = tb[1] = null;
+        }
+        return tb;
+    }
+
+    // '\n'-separated lines of a stream as ranges buf[from, to) of one reused buffer (a trailing
+    // '\r' is dropped); nothing is decoded. The range is valid until the next call to next().
+    private static final class ByteLines {
+        private final InputStream in;
+        byte[] buf = new byte[16 * 1024];
+        int from, to;
+        private int start, limit; // unconsumed bytes buf[start, limit)
+        private boolean eof;
+
+        ByteLines(InputStream in) {
+            this.in = in;
+        }
+
+        boolean next() throws IOException {
+            int scan = start;
+            while (true) {
+                for (int i = scan; i < limit; i++) {
+                    if (buf[i] == '\n') {
+                        line(start, i);
+                        start = i + 1;
+                        return true;
+                    }
+                }
+                if (eof) {
+                    if (start == limit) return false;
+                    line(start, limit);
+                    start = limit;
+                    return true;
+                }
+                scan = limit - start;
+                if (start > 0) {
+                    System.arraycopy(buf, start, buf, 0, limit - start);
+                    limit -= start;
+                    start = 0;
+                }
+                if (limit == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+                int n = in.read(buf, limit, buf.length - limit);
+                if (n < 0) eof = true;
+                else limit += n;
+            }
+        }
+
+        private void line(int s, int e) {
+            from = s;
+            to = e > s && buf[e - 1] == '\r' ? e - 1 : e;
+        }
     }
 
-    private static Map<String, String> parseQuery(String raw) {
+    static Map<String, String> parseQuery(String raw) {
         Map<String, String> m = new HashMap<>();
         if (raw == null || raw.isEmpty()) return m;
         String[] parts = raw.split("&");
@@ -288,14 +1243,6 @@ public class IncidentServer {
     }
 
     private void log(String fileName, Instant ts, String threadName, String message) {
-        Path p = Paths.get("logs", fileName);
-        String line = DateTimeFormatter.ISO_INSTANT.format(ts) +
-                ", " + threadName +
-                ", " + message;
-        try (BufferedWriter w = Files.newBufferedWriter(p, StandardCharsets.UTF_8,
-                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
-            w.write(line);
-            w.newLine();
-        } catch (IOException ignored) { }
+        AsyncLog.get(fileName).log(ts, threadName, message);
     }
 }
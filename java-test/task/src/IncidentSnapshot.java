@@ -0,0 +1,206 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+
+// Compact binary snapshot of the incident store and its inverted index.
+//
+// Layout (big-endian):
+//   long magic "INCSNAP3"
+//   long enrichedSize, long enrichedMtime   -- incidents_enriched.ndjson the snapshot was built from
+//   long localOffset                        -- local WAL bytes covered by the snapshot
+//   int nextId
+//   int count, then per incident: int id, int indexed length, byte presence flags, fields
+//   int terms, then per term: string, int n, n sorted ids, n term frequencies   -- word index
+//   int terms, then per term: string, int n, n sorted ids                       -- trigram index
+//   long magic (trailer)
+// Strings are int length + UTF-8 bytes. The file is written to a temp name and renamed atomically.
+public class IncidentSnapshot {
+
+    private static final long MAGIC = 0x494E43534E415033L; // INCSNAP3
+
+    private static final int F_TITLE = 1;
+    private static final int F_BODY = 1 << 1;
+    private static final int F_USER = 1 << 2;
+    private static final int F_IMPORTED = 1 << 3;
+    private static final int F_COMMENTS = 1 << 4;
+    private static final int F_EMAILS = 1 << 5;
+    private static final int F_ENRICHED = 1 << 6;
+    private static final int F_CREATED = 1 << 7;
+
+    // What a loaded snapshot covers.
+    public static final class Header {
+        public final long enrichedSize;
+        public final long enrichedMtime;
+        public final long localOffset;
+        public final int nextId;
+
+        Header(long enrichedSize, long enrichedMtime, long localOffset, int nextId) {
+            this.enrichedSize = enrichedSize;
+            this.enrichedMtime = enrichedMtime;
+            this.localOffset = localOffset;
+            this.nextId = nextId;
+        }
+    }
+
+    public static void write(Path file, Header h, List<Incident> incidents,
+                             InvertedIndex index, InvertedIndex trigrams) throws IOException {
+        commit(writeTemp(file, h, incidents, index, trigrams), file);
+    }
+
+    // First half of write: serializes everything to file.tmp, without syncing it. The store
+    // and the indexes are only read here, so a caller that must see them consistent holds
+    // off writers for this part only (see IncidentServer.snapshotIfChanged).
+    public static Path writeTemp(Path file, Header h, List<Incident> incidents,
+                                 InvertedIndex index, InvertedIndex trigrams) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16))) {
+
+            out.writeLong(MAGIC);
+            out.writeLong(h.enrichedSize);
+            out.writeLong(h.enrichedMtime);
+            out.writeLong(h.localOffset);
+            out.writeInt(h.nextId);
+
+            out.writeInt(incidents.size());
+            for (Incident inc : incidents) writeIncident(out, inc);
+
+            writePostings(out, index);
+            writePostings(out, trigrams);
+
+            out.writeLong(MAGIC);
+        }
+        return tmp;
+    }
+
+    // Second half: syncs the temp file and renames it over the snapshot.
+    public static void commit(Path tmp, Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            ch.force(false);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Loads the snapshot into the given (empty) store/index. Returns null if there is no usable snapshot.
+    // With an arena (may be null) incidents are stored as arena copies as they are read.
+    public static Header load(Path file, IntObjectMap<Incident> store,
+                              InvertedIndex index, InvertedIndex trigrams, TextArena arena) throws IOException {
+        if (!Files.exists(file)) return null;
+
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (ch.size() > Integer.MAX_VALUE) return null; // too large to map in one piece
+
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (buf.remaining() < 8 || buf.getLong() != MAGIC) return null;
+
+            Header h = new Header(buf.getLong(), buf.getLong(), buf.getLong(), buf.getInt());
+
+            int count = buf.getInt();
+            for (int i = 0; i < count; i++) {
+                Incident inc = readIncident(buf);
+                store.put(inc.id, arena == null ? inc : inc.offHeapCopy(arena));
+                index.countDocument(inc.indexedLength);
+            }
+
+            readPostings(buf, index);
+            readPostings(buf, trigrams);
+
+            if (buf.getLong() != MAGIC) throw new IOException("snapshot trailer missing");
+            return h;
+        } catch (RuntimeException e) {
+            throw new IOException("corrupt snapshot: " + e, e);
+        }
+    }
+
+    private static void writePostings(DataOutputStream out, InvertedIndex index) throws IOException {
+        List<Object[]> terms = new ArrayList<>();
+        index.forEachTerm((t, ids, tfs) -> terms.add(new Object[]{t, ids, tfs}));
+        out.writeInt(terms.size());
+        for (Object[] e : terms) {
+            writeString(out, (String) e[0]);
+            int[] ids = (int[]) e[1];
+            out.writeInt(ids.length);
+            for (int id : ids) out.writeInt(id);
+            if (index.hasFrequencies()) {
+                for (int tf : (int[]) e[2]) out.writeInt(tf);
+            }
+        }
+    }
+
+    private static void readPostings(ByteBuffer buf, InvertedIndex index) {
+        int terms = buf.getInt();
+        for (int i = 0; i < terms; i++) {
+            String term = readString(buf);
+            int[] ids = readInts(buf, buf.getInt());
+            int[] tfs = index.hasFrequencies() ? readInts(buf, ids.length) : null;
+            index.putPostings(term, ids, tfs);
+        }
+    }
+
+    private static int[] readInts(ByteBuffer buf, int n) {
+        int[] a = new int[n];
+        buf.asIntBuffer().get(a);
+        buf.position(buf.position() + n * 4);
+        return a;
+    }
+
+    private static void writeIncident(DataOutputStream out, Incident inc) throws IOException {
+        String title = inc.title(), body = inc.body(), importedAt = inc.importedAt(),
+                enrichedAt = inc.enrichedAt(), createdAt = inc.createdAt();
+        int flags = 0;
+        if (title != null) flags |= F_TITLE;
+        if (body != null) flags |= F_BODY;
+        if (inc.userId != null) flags |= F_USER;
+        if (importedAt != null) flags |= F_IMPORTED;
+        if (inc.commentsCount != null) flags |= F_COMMENTS;
+        if (inc.uniqueEmailsCount != null) flags |= F_EMAILS;
+        if (enrichedAt != null) flags |= F_ENRICHED;
+        if (createdAt != null) flags |= F_CREATED;
+
+        out.writeInt(inc.id);
+        out.writeInt(inc.indexedLength);
+        out.writeByte(flags);
+        if (title != null) writeString(out, title);
+        if (body != null) writeString(out, body);
+        if (inc.userId != null) out.writeInt(inc.userId);
+        if (importedAt != null) writeString(out, importedAt);
+        if (inc.commentsCount != null) out.writeInt(inc.commentsCount);
+        if (inc.uniqueEmailsCount != null) out.writeInt(inc.uniqueEmailsCount);
+        if (enrichedAt != null) writeString(out, enrichedAt);
+        if (createdAt != null) writeString(out, createdAt);
+    }
+
+    private static Incident readIncident(ByteBuffer buf) {
+        Incident inc = new Incident();
+        inc.id = buf.getInt();
+        inc.indexedLength = buf.getInt();
+        int flags = buf.get() & 0xFF;
+        if ((flags & F_TITLE) != 0) inc.title = readString(buf);
+        if ((flags & F_BODY) != 0) inc.body = readString(buf);
+        if ((flags & F_USER) != 0) inc.userId = buf.getInt();
+        if ((flags & F_IMPORTED) != 0) inc.importedAt = readString(buf);
+        if ((flags & F_COMMENTS) != 0) inc.commentsCount = buf.getInt();
+        if ((flags & F_EMAILS) != 0) inc.uniqueEmailsCount = buf.getInt();
+        if ((flags & F_ENRICHED) != 0) inc.enrichedAt = readString(buf);
+        if ((flags & F_CREATED) != 0) inc.createdAt = readString(buf);
+        return inc;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String readString(ByteBuffer buf) {
+        int len = buf.getInt();
+        byte[] b = new byte[len];
+        buf.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,264 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Append-only write-ahead log for locally created incidents.
+// One long-lived FileChannel; concurrent appends are collected by a single writer thread
+// and written as one group commit (one write + at most one fsync per batch).
+// The file can be swapped for a compacted copy (see replace); offsets restart with the new file.
+public class IncidentWal implements Closeable {
+
+    public enum Durability {
+        BATCH,    // fsync every batch before acknowledging it
+        PERIODIC, // acknowledge after write, fsync every fsyncIntervalMs
+        OS;       // acknowledge after write, leave flushing to the OS
+
+        static Durability parse(String s) {
+            return valueOf(s.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private static final int MAX_BATCH_BYTES = 1 << 20;
+
+    private final Path file;
+    private FileChannel ch; // used by the writer thread only (and by close after it stopped)
+    private final Durability durability;
+    private final long fsyncIntervalNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition hasWork = lock.newCondition();
+    private List<Pending> pending = new ArrayList<>();
+    private boolean closed = false;
+
+    private final Thread writer;
+    private volatile long durablePosition;
+    private IOException broken; // writer thread only: set when a failed batch could not be cut off
+
+    private static final class Pending {
+        final byte[] data;
+        final Path replacement; // set for a replace() request instead of data
+        final long upTo;
+        final CompletableFuture<Long> done = new CompletableFuture<>();
+
+        Pending(byte[] data) { this(data, null, 0); }
+
+        Pending(byte[] data, Path replacement, long upTo) {
+            this.data = data;
+            this.replacement = replacement;
+            this.upTo = upTo;
+        }
+    }
+
+    public IncidentWal(Path file, Durability durability, long fsyncIntervalMs) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null) Files.createDirectories(dir);
+        this.file = file;
+        this.ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.ch.position(ch.size());
+        this.durablePosition = ch.size();
+        this.durability = durability;
+        this.fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, fsyncIntervalMs));
+
+        this.writer = new Thread(this::writerLoop, "wal-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    // Enqueues one record (already newline-terminated). The future completes with the end offset
+    // of the batch once it is durable according to the configured mode.
+    public CompletableFuture<Long> append(byte[] record) {
+        return enqueue(new Pending(record));
+    }
+
+    // Replaces the log by `compacted`, which must stand for the first upTo bytes of it. Runs on
+    // the writer thread between batches: records appended after upTo are copied to the end of
+    // compacted, which is synced and renamed over the log; later appends go to the new file.
+    // Completes with the size of the new file, which is also the new durablePosition().
+    public CompletableFuture<Long> replace(Path compacted, long upTo) {
+        return enqueue(new Pending(null, compacted, upTo));
+    }
+
+    private CompletableFuture<Long> enqueue(Pending p) {
+        lock.lock();
+        try {
+            if (closed) {
+                p.done.completeExceptionally(new IOException("WAL closed"));
+                return p.done;
+            }
+            pending.add(p);
+            hasWork.signal();
+        } finally {
+            lock.unlock();
+        }
+        return p.done;
+    }
+
+    // End offset of everything acknowledged so far.
+    public long durablePosition() {
+        return durablePosition;
+    }
+
+    public Durability durability() {
+        return durability;
+    }
+
+    private void writerLoop() {
+        long lastSync = System.nanoTime();
+        boolean dirty = false;
+
+        while (true) {
+            List<Pending> batch;
+            lock.lock();
+            try {
+                while (pending.isEmpty() && !closed) {
+                    if (dirty && durability == Durability.PERIODIC) {
+                        long waitNs = fsyncIntervalNanos - (System.nanoTime() - lastSync);
+                        if (waitNs <= 0) break;
+                        hasWork.awaitNanos(waitNs);
+                    } else {
+                        hasWork.await();
+                    }
+                }
+                if (pending.isEmpty() && closed) {
+                    batch = null;
+                } else if (pending.isEmpty()) {
+                    batch = pending; // PERIODIC fsync tick with nothing queued
+                    pending = new ArrayList<>();
+                } else {
+                    // records up to the next replace request; a replace request goes alone
+                    int cut = 0;
+                    while (cut < pending.size() && pending.get(cut).replacement == null) cut++;
+                    if (cut == 0) cut = 1;
+                    if (cut == pending.size()) {
+                        batch = pending;
+                        pending = new ArrayList<>();
+                    } else {
+                        batch = new ArrayList<>(pending.subList(0, cut));
+                        pending.subList(0, cut).clear();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            if (batch != null && !batch.isEmpty() && batch.get(0).replacement != null) {
+                Pending r = batch.get(0);
+                try {
+                    if (dirty) ch.force(false);
+                    lastSync = System.nanoTime();
+                    dirty = false;
+                    swap(r.replacement, r.upTo);
+                    durablePosition = ch.position();
+                    r.done.complete(durablePosition);
+                } catch (IOException e) {
+                    r.done.completeExceptionally(e);
+                }
+                continue;
+            }
+
+            long start = -1;
+            try {
+                if (batch != null && !batch.isEmpty()) {
+                    if (broken != null) throw new IOException("WAL unusable after a failed write", broken);
+                    start = ch.position();
+                    writeBatch(batch);
+                    dirty = true;
+                }
+                if (dirty && (durability == Durability.BATCH
+                        || (durability == Durability.PERIODIC && System.nanoTime() - lastSync >= fsyncIntervalNanos)
+                        || batch == null)) {
+                    ch.force(false);
+                    lastSync = System.nanoTime();
+                    dirty = false;
+                }
+                if (batch != null) {
+                    long end = ch.position();
+                    durablePosition = end;
+                    for (Pending p : batch) p.done.complete(end);
+                }
+            } catch (IOException e) {
+                if (start >= 0) rollback(start, e);
+                if (batch != null) for (Pending p : batch) p.done.completeExceptionally(e);
+            }
+
+            if (batch == null) return; // closed and drained
+        }
+    }
+
+    private void swap(Path compacted, long upTo) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(compacted, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            long end = in.size();
+            for (long pos = upTo; pos < end; ) pos += in.transferTo(pos, end - pos, out);
+            out.force(false);
+        }
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        ch.close();
+        ch = FileChannel.open(file, StandardOpenOption.WRITE);
+        ch.position(ch.size());
+    }
+
+    // A failed batch (write or fsync) is not acknowledged, so it is cut off again: otherwise the
+    // next batch would land behind a torn record, and replay would keep records nobody published.
+    // If that fails too, later appends fail instead of following the garbage.
+    private void rollback(long start, IOException cause) {
+        try {
+            ch.truncate(start);
+            ch.position(start);
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+            broken = cause;
+        }
+    }
+
+    private void writeBatch(List<Pending> batch) throws IOException {
+        int total = 0;
+        for (Pending p : batch) total += p.data.length;
+
+        if (total > MAX_BATCH_BYTES) {
+            // very large batch: write records one by one instead of building a huge buffer
+            for (Pending p : batch) writeFully(ByteBuffer.wrap(p.data));
+            return;
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(total);
+        for (Pending p : batch) buf.put(p.data);
+        buf.flip();
+        writeFully(buf);
+    }
+
+    private void writeFully(ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) ch.write(buf);
+    }
+
+    // Drains pending appends, forces the file and closes the channel.
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) return;
+            closed = true;
+            hasWork.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ch.close();
+    }
+}
@@ -0,0 +1,257 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Concurrent int -> object map with open addressing (linear probing) over two flat arrays.
+// No boxed keys and no per-entry nodes: an entry costs one int and one reference slot.
+// Keys are spread over SEGMENTS independent tables by the top bits of their hash; each has its
+// own lock, so writes to different segments run in parallel and a resize only stalls writers
+// of one segment. Reads are lock-free. A slot is in use once its value is non-null, and its key
+// never changes afterwards, so a reader that sees the value (acquire) also sees the key.
+// Removal leaves a tombstone that is dropped on the next resize. Resizing builds a new table
+// and publishes it; the old one is never written again.
+public class IntObjectMap<V> {
+
+    private static final VarHandle VALUES = MethodHandles.arrayElementVarHandle(Object[].class);
+    private static final Object TOMBSTONE = new Object();
+    private static final int SEGMENT_BITS = 4;
+    private static final int SEGMENTS = 1 << SEGMENT_BITS;
+    private static final int MIN_CAPACITY = 4; // per segment
+
+    public interface IntObjConsumer<V> {
+        void accept(int key, V value);
+    }
+
+    private static final class Table {
+        final int[] keys;
+        final Object[] values;
+        final int mask;
+
+        Table(int capacity) {
+            keys = new int[capacity];
+            values = new Object[capacity];
+            mask = capacity - 1;
+        }
+    }
+
+    // j.u.c lock rather than synchronized: put/remove run on request threads (see
+    // IncidentServer.createExecutor)
+    private static final class Segment extends ReentrantLock {
+        private static final long serialVersionUID = 1L;
+
+        transient volatile Table table;
+        volatile int size;
+        int used; // live entries + tombstones, guarded by the lock
+
+        Segment(int capacity) {
+            table = new Table(capacity);
+        }
+    }
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    public IntObjectMap() {
+        this(0);
+    }
+
+    public IntObjectMap(int expectedSize) {
+        int capacity = capacityFor((expectedSize + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) segments[i] = new Segment(capacity);
+    }
+
+    private static int capacityFor(int n) {
+        long c = Math.max(MIN_CAPACITY, (long) n * 4 / 3 + 1);
+        if (c > 1 << 30) throw new IllegalArgumentException("too many entries: " + n);
+        return Integer.highestOneBit((int) c - 1) << 1;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16); // top bits pick the segment, low bits the slot
+    }
+
+    private Segment segment(int h) {
+        return segments[h >>> (32 - SEGMENT_BITS)];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int h = hash(key);
+        Table t = segment(h).table;
+        int i = h & t.mask;
+        while (true) {
+            Object v = VALUES.getAcquire(t.values, i);
+            if (v == null) return null;
+            if (t.keys[i] == key) return v == TOMBSTONE ? null : (V) v;
+            i = (i + 1) & t.mask;
+        }
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    public int size() {
+        int n = 0;
+        for (Segment s : segments) n += s.size;
+        return n;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // Returns the previous value, or null.
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null) throw new NullPointerException("value");
+        int h = hash(key);
+        Segment s = segment(h);
+        s.lock();
+        try {
+            Table t = s.table;
+            int i = h & t.mask;
+            while (true) {
+                Object v = t.values[i];
+                if (v == null) break;
+                if (t.keys[i] == key) {
+                    VALUES.setRelease(t.values, i, value);
+                    if (v == TOMBSTONE) {
+                        s.size++;
+                        return null;
+                    }
+                    return (V) v;
+                }
+                i = (i + 1) & t.mask;
+            }
+
+            if ((s.used + 1) * 4L > t.keys.length * 3L) {
+                t = resize(s, s.size + 1);
+                i = h & t.mask;
+                while (t.values[i] != null) i = (i + 1) & t.mask;
+            }
+            t.keys[i] = key;
+            VALUES.setRelease(t.values, i, value);
+            s.used++;
+            s.size++;
+            return null;
+        } finally {
+            s.unlock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int h = hash(key);
+        Segment s = segment(h);
+        s.lock();
+        try {
+            Table t = s.table;
+            int i = h & t.mask;
+            while (true) {
+                Object v = t.values[i];
+                if (v == null) return null;
+                if (t.keys[i] == key) {
+                    if (v == TOMBSTONE) return null;
+                    VALUES.setRelease(t.values, i, TOMBSTONE);
+                    s.size--;
+                    return (V) v;
+                }
+                i = (i + 1) & t.mask;
+            }
+        } finally {
+            s.unlock();
+        }
+    }
+
+    // Segment by segment: a concurrent put may survive in a segment cleared before it.
+    public void clear() {
+        for (Segment s : segments) {
+            s.lock();
+            try {
+                s.table = new Table(MIN_CAPACITY);
+                s.used = 0;
+                s.size = 0;
+            } finally {
+                s.unlock();
+            }
+        }
+    }
+
+    // Rehashes the segment's live entries into a table sized for n entries and publishes it.
+    // Caller holds the segment's lock.
+    private static Table resize(Segment s, int n) {
+        Table old = s.table;
+        Table t = new Table(capacityFor(Math.max(n, s.size + s.size / 2))); // doubles when full, shrinks when tombstones dominate
+        for (int j = 0; j < old.values.length; j++) {
+            Object v = old.values[j];
+            if (v == null || v == TOMBSTONE) continue;
+            int i = hash(old.keys[j]) & t.mask;
+            while (t.values[i] != null) i = (i + 1) & t.mask;
+            t.keys[i] = old.keys[j];
+            t.values[i] = v;
+        }
+        s.used = s.size;
+        s.table = t;
+        return t;
+    }
+
+    // Weakly consistent: sees every entry present for the whole iteration, may or may not see concurrent writes.
+    @SuppressWarnings("unchecked")
+    public void forEach(IntObjConsumer<? super V> fn) {
+        for (Segment s : segments) {
+            Table t = s.table;
+            for (int i = 0; i < t.values.length; i++) {
+                Object v = VALUES.getAcquire(t.values, i);
+                if (v != null && v != TOMBSTONE) fn.accept(t.keys[i], (V) v);
+            }
+        }
+    }
+
+    public List<V> values() {
+        List<V> out = new ArrayList<>(size());
+        forEach((k, v) -> out.add(v));
+        return out;
+    }
+
+    public int[] keys() {
+        int[] out = new int[size()];
+        int n = 0;
+        for (Segment s : segments) {
+            Table t = s.table;
+            for (int i = 0; i < t.values.length; i++) {
+                Object v = VALUES.getAcquire(t.values, i);
+                if (v == null || v == TOMBSTONE) continue;
+                if (n == out.length) out = Arrays.copyOf(out, Math.max(16, n * 2)); // concurrent inserts
+                out[n++] = t.keys[i];
+            }
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    // Mean distance of the live entries from their home slot; 0 is perfect, linear probing at
+    // 3/4 load with a good hash stays around 1.5. A diagnostic for badly spread key sets.
+    double averageProbeLength() {
+        long probes = 0;
+        long live = 0;
+        for (Segment s : segments) {
+            Table t = s.table;
+            for (int i = 0; i < t.values.length; i++) {
+                Object v = VALUES.getAcquire(t.values, i);
+                if (v == null || v == TOMBSTONE) continue;
+                probes += (i - (hash(t.keys[i]) & t.mask)) & t.mask;
+                live++;
+            }
+        }
+        return live == 0 ? 0 : (double) probes / live;
+    }
+
+    public int[] sortedKeys() {
+        int[] ids = keys();
+        Arrays.sort(ids);
+        return ids;
+    }
+}
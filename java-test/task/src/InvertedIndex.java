@@ -0,0 +1,611 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.function.ObjIntConsumer;
+
+// Term -> sorted int[] posting lists over incident title and body.
+// Writers synchronize per posting list; readers take an immutable view without locking.
+// Updates and deletes only touch the lists of terms that actually changed; lists emptied by
+// removals stay in the map (dropping them could lose a concurrent add to the same list).
+// With frequencies enabled each posting also carries the term frequency, and the index keeps
+// document count / total length, which is what BM25 ranking needs.
+public class InvertedIndex {
+
+    public enum Mode {
+        AND, OR, PHRASE;
+
+        static Mode parse(String s) {
+            if (s == null || s.isBlank()) return AND;
+            return valueOf(s.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    // BM25 parameters (usual defaults)
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private static final int[] EMPTY = new int[0];
+
+    private final boolean frequencies;
+    private final ConcurrentHashMap<String, Postings> terms = new ConcurrentHashMap<>();
+    private final AtomicLong docCount = new AtomicLong();
+    private final AtomicLong totalLength = new AtomicLong();
+
+    public interface PostingsConsumer {
+        void accept(String term, int[] ids, int[] tfs);
+    }
+
+    public InvertedIndex() {
+        this(true);
+    }
+
+    public InvertedIndex(boolean frequencies) {
+        this.frequencies = frequencies;
+    }
+
+    // Lowercased word tokens, same rules for documents and queries.
+    public static List<String> tokens(String text) {
+        List<String> out = new ArrayList<>();
+        if (text == null) return out;
+        for (String w : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{Nd}]+")) {
+            if (!w.isBlank()) out.add(w);
+        }
+        return out;
+    }
+
+    // Emits (term, tf) for title+body and records the document length on the incident.
+    private static void wordTerms(Incident inc, ObjIntConsumer<String> emit) {
+        Map<String, Integer> tf = termFrequencies(inc);
+        inc.indexedLength = length(tf);
+        tf.forEach(emit::accept);
+    }
+
+    private static Map<String, Integer> termFrequencies(Incident inc) {
+        Map<String, Integer> tf = new HashMap<>();
+        for (String w : tokens(inc.title())) tf.merge(w, 1, Integer::sum);
+        for (String w : tokens(inc.body())) tf.merge(w, 1, Integer::sum);
+        return tf;
+    }
+
+    private static int length(Map<String, Integer> tf) {
+        int len = 0;
+        for (int n : tf.values()) len += n;
+        return len;
+    }
+
+    public void add(Incident inc) {
+        if (inc.id == null) return;
+        int id = inc.id;
+        wordTerms(inc, (w, tf) -> addTerm(w, id, tf));
+        countDocument(inc.indexedLength);
+    }
+
+    // Adds id to the posting list of every given term (terms are not tokenized again).
+    public void addTerms(int id, Collection<String> docTerms) {
+        for (String w : docTerms) addTerm(w, id, 1);
+    }
+
+    private void addTerm(String term, int id, int tf) {
+        terms.computeIfAbsent(term, k -> new Postings(frequencies)).add(id, tf);
+    }
+
+    // Re-indexes an incident whose text changed (old is the indexed version, now replaces it
+    // under the same id). Only terms that appeared, disappeared or changed frequency are touched.
+    public void update(Incident old, Incident now) {
+        int id = now.id;
+        Map<String, Integer> before = termFrequencies(old);
+        Map<String, Integer> after = termFrequencies(now);
+        now.indexedLength = length(after);
+        after.forEach((w, tf) -> { if (!tf.equals(before.get(w))) addTerm(w, id, tf); });
+        for (String w : before.keySet()) if (!after.containsKey(w)) removeTerm(w, id);
+        totalLength.addAndGet(now.indexedLength - old.indexedLength);
+    }
+
+    public void remove(Incident inc) {
+        if (inc.id == null) return;
+        for (String w : termFrequencies(inc).keySet()) removeTerm(w, inc.id);
+        docCount.decrementAndGet();
+        totalLength.addAndGet(-inc.indexedLength);
+    }
+
+    // Term-set diff for indexes without frequencies (see TrigramIndex).
+    public void updateTerms(int id, Collection<String> before, Collection<String> after) {
+        for (String w : after) if (!before.contains(w)) addTerm(w, id, 1);
+        for (String w : before) if (!after.contains(w)) removeTerm(w, id);
+    }
+
+    public void removeTerms(int id, Collection<String> docTerms) {
+        for (String w : docTerms) removeTerm(w, id);
+    }
+
+    private void removeTerm(String term, int id) {
+        Postings p = terms.get(term);
+        if (p != null) p.remove(id);
+    }
+
+    // Document statistics for BM25 (also restored from snapshots).
+    public void countDocument(int length) {
+        docCount.incrementAndGet();
+        totalLength.addAndGet(length);
+    }
+
+    public void addAll(Collection<Incident> incidents) {
+        addAll(incidents, InvertedIndex::wordTerms);
+        if (frequencies) {
+            for (Incident inc : incidents) if (inc.id != null) countDocument(inc.indexedLength);
+        }
+    }
+
+    // Bulk build for startup: (id, tf) pairs are collected per worker on the common fork-join pool,
+    // then each posting list is sorted once instead of taking out-of-order inserts one by one.
+    public void addAll(Collection<Incident> incidents, BiConsumer<Incident, ObjIntConsumer<String>> termsOf) {
+        Map<String, LongList> collected = incidents.parallelStream().collect(
+                HashMap::new,
+                (m, inc) -> {
+                    if (inc.id == null) return;
+                    long id = inc.id;
+                    termsOf.accept(inc, (w, tf) -> m.computeIfAbsent(w, k -> new LongList()).add(id << 32 | tf));
+                },
+                (a, b) -> b.forEach((t, l) -> a.merge(t, l, LongList::addAll)));
+
+        collected.entrySet().parallelStream().forEach(e -> {
+            long[] pairs = e.getValue().sortedDistinctById();
+            terms.compute(e.getKey(), (t, p) -> {
+                if (p == null) {
+                    int[] ids = new int[pairs.length];
+                    int[] tfs = frequencies ? new int[pairs.length] : null;
+                    for (int i = 0; i < pairs.length; i++) {
+                        ids[i] = (int) (pairs[i] >>> 32);
+                        if (tfs != null) tfs[i] = (int) pairs[i];
+                    }
+                    p = new Postings(frequencies);
+                    p.view = new View(ids, tfs, ids.length);
+                } else {
+                    for (long pair : pairs) p.add((int) (pair >>> 32), (int) pair);
+                }
+                return p;
+            });
+        });
+    }
+
+    public void clear() {
+        terms.clear();
+        docCount.set(0);
+        totalLength.set(0);
+    }
+
+    // Sorted copy of every posting list (used by snapshots); tfs is null without frequencies.
+    public void forEachTerm(PostingsConsumer fn) {
+        terms.forEach((t, p) -> {
+            View v = p.view;
+            if (v.size == 0) return;
+            fn.accept(t, Arrays.copyOf(v.ids, v.size), v.tfs == null ? null : Arrays.copyOf(v.tfs, v.size));
+        });
+    }
+
+    // Installs a posting list loaded from a snapshot; ids must be sorted ascending.
+    public void putPostings(String term, int[] sortedIds, int[] tfs) {
+        Postings p = new Postings(frequencies);
+        int[] f = frequencies ? (tfs != null ? tfs : filled(sortedIds.length)) : null;
+        p.view = new View(sortedIds, f, sortedIds.length);
+        terms.put(term, p);
+    }
+
+    private static int[] filled(int n) {
+        int[] a = new int[n];
+        Arrays.fill(a, 1);
+        return a;
+    }
+
+    public boolean hasFrequencies() {
+        return frequencies;
+    }
+
+    public int termCount() {
+        return terms.size();
+    }
+
+    // Sorted ids matching the query tokens. PHRASE returns AND candidates; the caller verifies order.
+    public int[] search(List<String> queryTokens, Mode mode) {
+        List<View> lists = views(queryTokens, mode);
+        if (lists == null || lists.isEmpty()) return EMPTY;
+
+        if (mode == Mode.OR) return union(lists);
+        return intersect(new ArrayList<>(lists));
+    }
+
+    // The ids search() would return that are greater than after, produced as they are consumed:
+    // a page stops reading the postings once it is full instead of materializing every match.
+    public PrimitiveIterator.OfInt cursor(List<String> queryTokens, Mode mode, int after) {
+        List<View> lists = views(queryTokens, mode);
+        if (lists == null || lists.isEmpty() || after == Integer.MAX_VALUE) return Arrays.stream(EMPTY).iterator();
+        return new Cursor(lists, mode == Mode.OR, after);
+    }
+
+    // Posting views for the distinct query terms; null if an AND/PHRASE term is missing.
+    private List<View> views(List<String> queryTokens, Mode mode) {
+        List<View> lists = new ArrayList<>(queryTokens.size());
+        for (String t : new LinkedHashSet<>(queryTokens)) {
+            Postings p = terms.get(t);
+            if (p == null) {
+                if (mode == Mode.OR) continue;
+                return null;
+            }
+            lists.add(p.view);
+        }
+        return lists;
+    }
+
+    // Top k ids by BM25 score (best first). Every candidate gets a cheap score from the postings;
+    // accept (e.g. phrase verification) only runs for candidates that would enter the heap.
+    public int[] topK(List<String> queryTokens, Mode mode, int k, IntUnaryOperator docLength, IntPredicate accept) {
+        return topK(queryTokens, mode, k, docLength, accept, null);
+    }
+
+    // Same, and writes the score of result i to scores[i] when scores is not null.
+    public int[] topK(List<String> queryTokens, Mode mode, int k, IntUnaryOperator docLength, IntPredicate accept,
+                      double[] scores) {
+        if (!frequencies) throw new IllegalStateException("index has no term frequencies");
+        List<View> lists = views(queryTokens, mode);
+        if (lists == null || lists.isEmpty() || k <= 0) return EMPTY;
+
+        int[] candidates = mode == Mode.OR ? union(lists) : intersect(new ArrayList<>(lists));
+
+        long n = Math.max(1, docCount.get());
+        double avgdl = Math.max(1.0, (double) totalLength.get() / n);
+        double[] idf = new double[lists.size()];
+        for (int t = 0; t < idf.length; t++) {
+            int df = lists.get(t).size;
+            idf[t] = Math.log(1 + (n - df + 0.5) / (df + 0.5));
+        }
+
+        int[] cursor = new int[lists.size()];
+        double[] heapScore = new double[k];
+        int[] heapId = new int[k];
+        int heapSize = 0;
+
+        for (int id : candidates) {
+            double norm = K1 * (1 - B + B * docLength.applyAsInt(id) / avgdl);
+            double score = 0;
+            for (int t = 0; t < lists.size(); t++) {
+                View v = lists.get(t);
+                int j = cursor[t];
+                while (j < v.size && v.ids[j] < id) j++;
+                cursor[t] = j;
+                if (j < v.size && v.ids[j] == id) {
+                    int tf = v.tfs[j];
+                    score += idf[t] * tf * (K1 + 1) / (tf + norm);
+                }
+            }
+
+            if (heapSize == k && !better(score, id, heapScore[0], heapId[0])) continue;
+            if (!accept.test(id)) continue;
+
+            if (heapSize < k) {
+                heapScore[heapSize] = score;
+                heapId[heapSize] = id;
+                siftUp(heapScore, heapId, heapSize++);
+            } else {
+                heapScore[0] = score;
+                heapId[0] = id;
+                siftDown(heapScore, heapId, heapSize);
+            }
+        }
+
+        // pop min repeatedly -> fill from the back to get best first
+        int[] out = new int[heapSize];
+        for (int i = heapSize - 1; i >= 0; i--) {
+            out[i] = heapId[0];
+            if (scores != null) scores[i] = heapScore[0];
+            heapSize--;
+            heapScore[0] = heapScore[heapSize];
+            heapId[0] = heapId[heapSize];
+            siftDown(heapScore, heapId, heapSize);
+        }
+        return out;
+    }
+
+    // Higher score wins; on ties the lower id wins so the order is stable.
+    private static boolean better(double s1, int id1, double s2, int id2) {
+        return s1 > s2 || (s1 == s2 && id1 < id2);
+    }
+
+    private static void siftUp(double[] s, int[] id, int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!better(s[parent], id[parent], s[i], id[i])) break;
+            swap(s, id, i, parent);
+            i = parent;
+        }
+    }
+
+    private static void siftDown(double[] s, int[] id, int size) {
+        int i = 0;
+        while (true) {
+            int l = 2 * i + 1, r = l + 1, min = i;
+            if (l < size && better(s[min], id[min], s[l], id[l])) min = l;
+            if (r < size && better(s[min], id[min], s[r], id[r])) min = r;
+            if (min == i) return;
+            swap(s, id, i, min);
+            i = min;
+        }
+    }
+
+    private static void swap(double[] s, int[] id, int a, int b) {
+        double ts = s[a]; s[a] = s[b]; s[b] = ts;
+        int ti = id[a]; id[a] = id[b]; id[b] = ti;
+    }
+
+    // Smallest list first; each step only shrinks the candidate set.
+    private static int[] intersect(List<View> lists) {
+        lists.sort(Comparator.comparingInt(v -> v.size));
+        View first = lists.get(0);
+        int[] acc = Arrays.copyOf(first.ids, first.size);
+        int n = acc.length;
+
+        for (int li = 1; li < lists.size() && n > 0; li++) {
+            View v = lists.get(li);
+            int out = 0;
+            if ((long) n * 32 < v.size) {
+                // much longer list: galloping probe per candidate
+                int lo = 0;
+                for (int i = 0; i < n; i++) {
+                    int pos = gallop(v.ids, lo, v.size, acc[i]);
+                    if (pos < v.size && v.ids[pos] == acc[i]) acc[out++] = acc[i];
+                    lo = pos;
+                }
+            } else {
+                int i = 0, j = 0;
+                while (i < n && j < v.size) {
+                    int a = acc[i], b = v.ids[j];
+                    if (a == b) { acc[out++] = a; i++; j++; }
+                    else if (a < b) i++;
+                    else j++;
+                }
+            }
+            n = out;
+        }
+        return n == acc.length ? acc : Arrays.copyOf(acc, n);
+    }
+
+    // First index in [lo, hi) with a[index] >= key.
+    private static int gallop(int[] a, int lo, int hi, int key) {
+        int step = 1;
+        int bound = lo;
+        while (bound < hi && a[bound] < key) {
+            lo = bound + 1;
+            bound += step;
+            step <<= 1;
+        }
+        hi = Math.min(bound + 1, hi);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] < key) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private static int[] union(List<View> lists) {
+        int[] acc = EMPTY;
+        for (View v : lists) {
+            int[] out = new int[acc.length + v.size];
+            int i = 0, j = 0, k = 0;
+            while (i < acc.length && j < v.size) {
+                int a = acc[i], b = v.ids[j];
+                if (a == b) { out[k++] = a; i++; j++; }
+                else if (a < b) out[k++] = acc[i++];
+                else out[k++] = v.ids[j++];
+            }
+            while (i < acc.length) out[k++] = acc[i++];
+            while (j < v.size) out[k++] = v.ids[j++];
+            acc = k == out.length ? out : Arrays.copyOf(out, k);
+        }
+        return acc;
+    }
+
+    // True if the phrase tokens occur consecutively in the title or the body.
+    public static boolean containsPhrase(Incident inc, List<String> phrase) {
+        return containsSequence(tokens(inc.title()), phrase) || containsSequence(tokens(inc.body()), phrase);
+    }
+
+    private static boolean containsSequence(List<String> doc, List<String> phrase) {
+        outer:
+        for (int i = 0; i + phrase.size() <= doc.size(); i++) {
+            for (int j = 0; j < phrase.size(); j++) {
+                if (!doc.get(i + j).equals(phrase.get(j))) continue outer;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    // Lazy union (or) / intersection (and) of posting views captured at creation, ascending.
+    private static final class Cursor implements PrimitiveIterator.OfInt {
+        private final View[] lists;
+        private final int[] pos;
+        private final boolean any;
+        private int next;
+        private boolean ready;
+        private boolean done;
+
+        Cursor(List<View> views, boolean any, int after) {
+            this.lists = views.toArray(new View[0]);
+            this.any = any;
+            if (!any) Arrays.sort(lists, Comparator.comparingInt(v -> v.size)); // smallest list leads
+            pos = new int[lists.length];
+            for (int i = 0; i < lists.length; i++) pos[i] = gallop(lists[i].ids, 0, lists[i].size, after + 1);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!ready && !done) {
+                ready = any ? union() : intersect();
+                done = !ready;
+            }
+            return ready;
+        }
+
+        @Override
+        public int nextInt() {
+            if (!hasNext()) throw new NoSuchElementException();
+            ready = false;
+            return next;
+        }
+
+        // Smallest head, then every list at that id steps past it.
+        private boolean union() {
+            boolean found = false;
+            int min = 0;
+            for (int i = 0; i < lists.length; i++) {
+                if (pos[i] < lists[i].size && (!found || lists[i].ids[pos[i]] < min)) {
+                    min = lists[i].ids[pos[i]];
+                    found = true;
+                }
+            }
+            if (!found) return false;
+            for (int i = 0; i < lists.length; i++) {
+                if (pos[i] < lists[i].size && lists[i].ids[pos[i]] == min) pos[i]++;
+            }
+            next = min;
+            return true;
+        }
+
+        // Leapfrog: the smallest list proposes an id, the others gallop to it; a miss moves
+        // the proposal up to the id the other list stopped at.
+        private boolean intersect() {
+            View first = lists[0];
+            outer:
+            while (pos[0] < first.size) {
+                int candidate = first.ids[pos[0]];
+                for (int i = 1; i < lists.length; i++) {
+                    View v = lists[i];
+                    pos[i] = gallop(v.ids, pos[i], v.size, candidate);
+                    if (pos[i] == v.size) return false;
+                    if (v.ids[pos[i]] != candidate) {
+                        pos[0] = gallop(first.ids, pos[0], first.size, v.ids[pos[i]]);
+                        continue outer;
+                    }
+                }
+                pos[0]++;
+                next = candidate;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    // Published state of a posting list. Arrays are never modified below a published size,
+    // so a reader holding a View sees a consistent sorted prefix. tfs is parallel to ids (or null).
+    private static final class View {
+        final int[] ids;
+        final int[] tfs;
+        final int size;
+
+        View(int[] ids, int[] tfs, int size) {
+            this.ids = ids;
+            this.tfs = tfs;
+            this.size = size;
+        }
+    }
+
+    // (id << 32 | tf) pairs; sorting the longs sorts by id.
+    private static final class LongList {
+        long[] a = new long[4];
+        int n;
+
+        void add(long v) {
+            if (n == a.length) a = Arrays.copyOf(a, n * 2);
+            a[n++] = v;
+        }
+
+        LongList addAll(LongList o) {
+            if (n + o.n > a.length) a = Arrays.copyOf(a, Math.max(n + o.n, a.length * 2));
+            System.arraycopy(o.a, 0, a, n, o.n);
+            n += o.n;
+            return this;
+        }
+
+        long[] sortedDistinctById() {
+            long[] r = Arrays.copyOf(a, n);
+            Arrays.sort(r);
+            int k = 0;
+            for (int i = 0; i < r.length; i++) {
+                if (k > 0 && (r[k - 1] >>> 32) == (r[i] >>> 32)) r[k - 1] = r[i]; // last tf wins
+                else r[k++] = r[i];
+            }
+            return k == r.length ? r : Arrays.copyOf(r, k);
+        }
+    }
+
+    private static final class Postings {
+        volatile View view;
+
+        Postings(boolean frequencies) {
+            view = new View(new int[4], frequencies ? new int[4] : null, 0);
+        }
+
+        synchronized void add(int id, int tf) {
+            View v = view;
+            int n = v.size;
+            int[] a = v.ids;
+            int[] f = v.tfs;
+
+            if (n == 0 || a[n - 1] < id) {
+                // common case: ids grow monotonically
+                if (n == a.length) {
+                    a = Arrays.copyOf(a, Math.max(4, n * 2));
+                    if (f != null) f = Arrays.copyOf(f, a.length);
+                }
+                a[n] = id;
+                if (f != null) f[n] = tf;
+                view = new View(a, f, n + 1);
+                return;
+            }
+
+            int pos = Arrays.binarySearch(a, 0, n, id);
+            if (pos >= 0) {
+                if (f != null && f[pos] != tf) {
+                    int[] g = Arrays.copyOf(f, f.length);
+                    g[pos] = tf;
+                    view = new View(a, g, n);
+                }
+                return;
+            }
+            pos = -pos - 1;
+            int[] b = new int[Math.max(a.length, n + 1)];
+            System.arraycopy(a, 0, b, 0, pos);
+            b[pos] = id;
+            System.arraycopy(a, pos, b, pos + 1, n - pos);
+            int[] g = null;
+            if (f != null) {
+                g = new int[b.length];
+                System.arraycopy(f, 0, g, 0, pos);
+                g[pos] = tf;
+                System.arraycopy(f, pos, g, pos + 1, n - pos);
+            }
+            view = new View(b, g, n + 1);
+        }
+
+        // Copy without id: readers may still hold the current arrays.
+        synchronized void remove(int id) {
+            View v = view;
+            int pos = Arrays.binarySearch(v.ids, 0, v.size, id);
+            if (pos < 0) return;
+            int n = v.size - 1;
+            int[] b = new int[Math.max(4, n)];
+            System.arraycopy(v.ids, 0, b, 0, pos);
+            System.arraycopy(v.ids, pos + 1, b, pos, n - pos);
+            int[] g = null;
+            if (v.tfs != null) {
+                g = new int[b.length];
+                System.arraycopy(v.tfs, 0, g, 0, pos);
+                System.arraycopy(v.tfs, pos + 1, g, pos, n - pos);
+            }
+            view = new View(b, g, n);
+        }
+    }
+}
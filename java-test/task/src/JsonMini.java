@@ -1,48 +1,160 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 public class JsonMini {
 
     // ---- Public helpers ----
 
-    // Split top-level JSON objects from an array string like: [ {...}, {...} ]
-    public static List<String> splitTopLevelObjects(String jsonArray) {
-        String s = jsonArray.trim();
-        if (!s.startsWith("[") || !s.endsWith("]")) {
-            throw new IllegalArgumentException("Expected JSON array");
-        }
-        s = s.substring(1, s.length() - 1).trim();
-        List<String> out = new ArrayList<>();
-        if (s.isEmpty()) return out;
-
-        int depth = 0;
-        boolean inStr = false;
-        boolean esc = false;
-        int start = -1;
-
-        for (int i = 0; i < s.length(); i++) {
-            char c = s.charAt(i);
-
-            if (inStr) {
-                if (esc) esc = false;
-                else if (c == '\\') esc = true;
-                else if (c == '"') inStr = false;
-                continue;
+    // Pull-style reader over the top-level elements of a JSON array coming from a stream
+    // (a file, an HttpResponse body from BodyHandlers.ofInputStream()):
+    //
+    //   try (ArrayReader arr = new ArrayReader(in)) {
+    //       while (arr.next()) { ObjectReader o = arr.object(); ... }
+    //   }
+    //
+    // Only the current element and one read chunk are held, so memory is bounded by the largest
+    // element, not by the array. The element (buf()[from(), to())) stays valid until the next
+    // call to next(). Malformed arrays throw IllegalArgumentException.
+    public static final class ArrayReader implements Closeable {
+        private final InputStream in;
+        private byte[] buf;
+        private int pos, limit;  // unread bytes buf[pos, limit)
+        private int mark = -1;   // start of the element being scanned, kept when refilling
+        private int from, to;    // current element
+        private boolean started, first = true, done, eof;
+
+        public ArrayReader(InputStream in) {
+            this.in = in;
+            this.buf = new byte[16 * 1024];
+        }
+
+        // Moves to the next element; false after the closing ']'.
+        public boolean next() throws IOException {
+            if (done) return false;
+            if (!started) {
+                skipWs();
+                if (!more() || buf[pos] != '[') throw error("expected '['");
+                pos++;
+                started = true;
+            }
+            skipWs();
+            if (!more()) throw error("unterminated array");
+            if (buf[pos] == ']') {
+                pos++;
+                done = true;
+                return false;
+            }
+            if (!first) {
+                if (buf[pos] != ',') throw error("expected ',' or ']'");
+                pos++;
+                skipWs();
+                if (!more()) throw error("unterminated array");
+            }
+            first = false;
+
+            mark = pos;
+            byte c0 = buf[pos++];
+            if (c0 == '{' || c0 == '[') {
+                int depth = 1;
+                boolean inStr = false, esc = false;
+                while (depth > 0) {
+                    if (!more()) throw error("unterminated element");
+                    byte c = buf[pos++];
+                    if (inStr) {
+                        if (esc) esc = false;
+                        else if (c == '\\') esc = true;
+                        else if (c == '"') inStr = false;
+                    } else if (c == '"') {
+                        inStr = true;
+                    } else if (c == '{' || c == '[') {
+                        depth++;
+                    } else if (c == '}' || c == ']') {
+                        depth--;
+                    }
+                }
+            } else if (c0 == '"') {
+                boolean esc = false;
+                while (true) {
+                    if (!more()) throw error("unterminated string");
+                    byte c = buf[pos++];
+                    if (esc) esc = false;
+                    else if (c == '\\') esc = true;
+                    else if (c == '"') break;
+                }
             } else {
-                if (c == '"') { inStr = true; continue; }
+                while (more() && buf[pos] != ',' && buf[pos] != ']' && !isWs(buf[pos])) pos++;
             }
+            from = mark;
+            to = pos;
+            mark = -1;
+            return true;
+        }
 
-            if (c == '{') {
-                if (depth == 0) start = i;
-                depth++;
-            } else if (c == '}') {
-                depth--;
-                if (depth == 0 && start >= 0) {
-                    out.add(s.substring(start, i + 1));
-                    start = -1;
+        public byte[] buf() {
+            return buf;
+        }
+
+        public int from() {
+            return from;
+        }
+
+        public int to() {
+            return to;
+        }
+
+        public boolean isObject() {
+            return buf[from] == '{';
+        }
+
+        // Reader over the current element, which must be an object.
+        public ObjectReader object() {
+            return new ObjectReader(buf, from, to);
+        }
+
+        public byte[] bytes() {
+            return Arrays.copyOfRange(buf, from, to);
+        }
+
+        public String text() {
+            return new String(buf, from, to - from, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private void skipWs() throws IOException {
+            while (more() && isWs(buf[pos])) pos++;
+        }
+
+        // True if buf[pos] is available, reading more of the stream if needed.
+        private boolean more() throws IOException {
+            while (pos >= limit) {
+                if (eof) return false;
+                int keep = mark >= 0 ? mark : pos;
+                if (keep > 0) {
+                    System.arraycopy(buf, keep, buf, 0, limit - keep);
+                    limit -= keep;
+                    pos -= keep;
+                    if (mark >= 0) mark = 0;
                 }
+                if (limit == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+                int n = in.read(buf, limit, buf.length - limit);
+                if (n < 0) eof = true;
+                else limit += n;
             }
+            return true;
+        }
+
+        private IllegalArgumentException error(String what) {
+            return new IllegalArgumentException("Bad JSON array: " + what);
         }
-        return out;
     }
 
     public static int getInt(String obj, String key) {
@@ -51,17 +163,14 @@ public class JsonMini {
         return v;
     }
 
+    // Single-key lookups, for objects where only one field is needed; to read several fields
+    // walk the object once with ObjectReader instead.
     public static Integer getIntOrNull(String obj, String key) {
-        String raw = findRawValue(obj, key);
-        if (raw == null) return null;
-        raw = raw.trim();
-        // number only (no floats needed here)
-        int i = 0;
-        if (raw.startsWith("-")) i++;
-        while (i < raw.length() && Character.isDigit(raw.charAt(i))) i++;
-        String num = raw.substring(0, i);
-        if (num.isEmpty() || "-".equals(num)) return null;
-        return Integer.parseInt(num);
+        ObjectReader r = new ObjectReader(obj);
+        while (r.nextKey()) {
+            if (r.key().equals(key)) return r.intOrNull();
+        }
+        return null;
     }
 
     public static String getString(String obj, String key) {
@@ -71,114 +180,512 @@ public class JsonMini {
     }
 
     public static String getStringOrNull(String obj, String key) {
-        String raw = findRawValue(obj, key);
-        if (raw == null) return null;
-        raw = raw.trim();
-        if (!raw.startsWith("\"")) return null;
-        return parseJsonString(raw);
+        ObjectReader r = new ObjectReader(obj);
+        while (r.nextKey()) {
+            if (r.key().equals(key)) return r.stringOrNull();
+        }
+        return null;
     }
 
-    // Build JSON object from map (strings are escaped)
-    public static String obj(Map<String, Object> m) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("{");
-        boolean first = true;
-        for (Map.Entry<String, Object> e : m.entrySet()) {
-            if (!first) sb.append(",");
-            first = false;
-            sb.append("\"").append(escape(e.getKey())).append("\":");
-            sb.append(val(e.getValue()));
+    public static Boolean getBooleanOrNull(String obj, String key) {
+        ObjectReader r = new ObjectReader(obj);
+        while (r.nextKey()) {
+            if (r.key().equals(key)) return r.booleanOrNull();
         }
-        sb.append("}");
-        return sb.toString();
+        return null;
     }
 
-    // ---- Internal parsing ----
+    // One pass over the members of a JSON object held as UTF-8 bytes:
+    //
+    //   ObjectReader r = new ObjectReader(buf, from, to);
+    //   while (r.nextKey()) switch (r.key(KEYS)) { case K_ID -> id = r.intOrNull(); default -> { } }
+    //
+    // Only top-level keys are reported; nested objects/arrays and values the caller does not
+    // take are skipped as a whole, so a key inside a string or a nested value never matches.
+    // key(Keys) compares the raw bytes, and a String is decoded only for the string values
+    // taken with stringOrNull(). Malformed input throws IllegalArgumentException
+    // (NumberFormatException for an int that does not fit). Bytes after the closing '}' are
+    // ignored.
+    public static final class ObjectReader {
+        private final byte[] b;
+        private final int end;
+        private int pos;
+        private int keyStart, keyEnd; // raw key bytes, without the quotes
+        private boolean keyEscaped;
+        private boolean pending; // key read, its value not consumed yet
+        private boolean first = true;
+        private boolean done;
+        private byte[] scratch;  // unescaped string bytes
 
-    private static String val(Object o) {
-        if (o == null) return "null";
-        if (o instanceof Number || o instanceof Boolean) return String.valueOf(o);
-        return "\"" + escape(String.valueOf(o)) + "\"";
-    }
+        public ObjectReader(String json) {
+            this(json.getBytes(StandardCharsets.UTF_8));
+        }
+
+        public ObjectReader(byte[] json) {
+            this(json, 0, json.length);
+        }
+
+        // The buffer is read in place and must not change while the reader is used.
+        public ObjectReader(byte[] buf, int from, int to) {
+            b = buf;
+            end = to;
+            pos = skipWs(from);
+            if (pos >= end || b[pos] != '{') throw error("expected '{'");
+            pos++;
+        }
+
+        // position..limit of bb; a direct buffer is copied once, a heap buffer is read in place.
+        public ObjectReader(ByteBuffer bb) {
+            this(bb.hasArray() ? bb.array() : copy(bb),
+                    bb.hasArray() ? bb.arrayOffset() + bb.position() : 0,
+                    bb.hasArray() ? bb.arrayOffset() + bb.limit() : bb.remaining());
+        }
+
+        private static byte[] copy(ByteBuffer bb) {
+            byte[] a = new byte[bb.remaining()];
+            bb.get(bb.position(), a);
+            return a;
+        }
 
-    private static String escape(String s) {
-        StringBuilder sb = new StringBuilder(s.length() + 16);
-        for (int i = 0; i < s.length(); i++) {
-            char c = s.charAt(i);
-            switch (c) {
-                case '\\' -> sb.append("\\\\");
-                case '"' -> sb.append("\\\"");
-                case '\n' -> sb.append("\\n");
-                case '\r' -> sb.append("\\r");
-                case '\t' -> sb.append("\\t");
-                default -> sb.append(c);
+        // Moves to the next member; false at the end of the object.
+        public boolean nextKey() {
+            if (done) return false;
+            if (pending) skipValue();
+            pos = skipWs(pos);
+            if (pos >= end) throw error("unterminated object");
+            byte c = b[pos];
+            if (c == '}') {
+                pos++;
+                done = true;
+                return false;
             }
+            if (!first) {
+                if (c != ',') throw error("expected ',' or '}'");
+                pos = skipWs(pos + 1);
+            }
+            first = false;
+            if (pos >= end || b[pos] != '"') throw error("expected key");
+            keyStart = pos + 1;
+            keyEscaped = false;
+            int i = keyStart;
+            while (i < end && b[i] != '"') {
+                if (b[i] == '\\') {
+                    keyEscaped = true;
+                    i++;
+                }
+                i++;
+            }
+            if (i >= end) throw error("unterminated string");
+            keyEnd = i;
+            pos = skipWs(i + 1);
+            if (pos >= end || b[pos] != ':') throw error("expected ':'");
+            pos = skipWs(pos + 1);
+            if (pos >= end) throw error("missing value");
+            pending = true;
+            return true;
+        }
+
+        public String key() {
+            if (!keyEscaped) return new String(b, keyStart, keyEnd - keyStart, StandardCharsets.UTF_8);
+            int save = pos;
+            pos = keyStart - 1;
+            String k = readString();
+            pos = save;
+            return k;
+        }
+
+        // Index of the current key in keys, -1 if it is not one of them.
+        public int key(Keys keys) {
+            if (keyEscaped) {
+                byte[] k = key().getBytes(StandardCharsets.UTF_8);
+                return keys.indexOf(k, 0, k.length);
+            }
+            return keys.indexOf(b, keyStart, keyEnd);
+        }
+
+        // The value if it is a string, null (value skipped) otherwise.
+        public String stringOrNull() {
+            if (!take()) return null;
+            if (b[pos] != '"') {
+                skipAny();
+                return null;
+            }
+            return readString();
+        }
+
+        // The integer part of a number value, null (value skipped) for any other value.
+        public Integer intOrNull() {
+            if (!take()) return null;
+            int i = pos;
+            boolean neg = b[i] == '-';
+            if (neg) i++;
+            int digits = i;
+            long v = 0;
+            while (i < end && b[i] >= '0' && b[i] <= '9') {
+                v = v * 10 + (b[i++] - '0');
+                if (v > 1L << 31) throw new NumberFormatException("int out of range at " + pos);
+            }
+            if (i == digits) {
+                skipAny();
+                return null;
+            }
+            if (neg) v = -v;
+            if (v != (int) v) throw new NumberFormatException("int out of range at " + pos);
+            pos = i;
+            skipLiteral(); // fraction/exponent
+            return (int) v;
+        }
+
+        public Boolean booleanOrNull() {
+            if (!take()) return null;
+            Boolean v = literal(TRUE) ? Boolean.TRUE : literal(FALSE) ? Boolean.FALSE : null;
+            skipAny();
+            return v;
+        }
+
+        public void skipValue() {
+            if (take()) skipAny();
+        }
+
+        private boolean take() {
+            if (!pending) return false;
+            pending = false;
+            return true;
+        }
+
+        private boolean literal(byte[] word) {
+            return end - pos >= word.length && Arrays.equals(b, pos, pos + word.length, word, 0, word.length);
         }
-        return sb.toString();
-    }
 
-    // Finds raw JSON value substring starting at the first char of value.
-    // Works for primitive/string values, not for nested objects/arrays extraction (not needed here).
-    private static String findRawValue(String obj, String key) {
-    // Упрощение под формат типа JSONPlaceholder: ключи уникальны, в значениях такой подстроки почти нет.
-        String needle = "\"" + key + "\"";
-        int k = obj.indexOf(needle);
-        if (k < 0) return null;
+        private void skipAny() {
+            byte c = b[pos];
+            if (c == '"') {
+                pos = stringEnd(pos) + 1;
+            } else if (c == '{' || c == '[') {
+                skipNested();
+            } else {
+                skipLiteral();
+            }
+        }
 
-        int colon = obj.indexOf(':', k + needle.length());
-        if (colon < 0) return null;
+        private void skipLiteral() {
+            while (pos < end) {
+                byte c = b[pos];
+                if (c == ',' || c == '}' || c == ']' || isWs(c)) break;
+                pos++;
+            }
+        }
+
+        private void skipNested() {
+            int depth = 0;
+            while (pos < end) {
+                byte c = b[pos];
+                if (c == '"') {
+                    pos = stringEnd(pos);
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    if (--depth == 0) {
+                        pos++;
+                        return;
+                    }
+                }
+                pos++;
+            }
+            throw error("unterminated value");
+        }
 
-        int i = colon + 1;
-        while (i < obj.length() && Character.isWhitespace(obj.charAt(i))) i++;
+        // Index of the closing quote of the string opening at q.
+        private int stringEnd(int q) {
+            for (int i = q + 1; i < end; i++) {
+                if (b[i] == '"') return i;
+                if (b[i] == '\\') i++;
+            }
+            throw error("unterminated string");
+        }
 
-        return obj.substring(i); // дальше getInt/getString уже отрежут токен
+        // pos at the opening quote; leaves pos after the closing one. A string without escapes
+        // is decoded straight from the buffer; otherwise the unescaped bytes are collected in
+        // scratch first. Multi-byte UTF-8 sequences never contain '"' or '\', so they are
+        // copied through untouched.
+        private String readString() {
+            int start = pos + 1;
+            int i = start;
+            while (i < end) {
+                byte c = b[i];
+                if (c == '"') {
+                    pos = i + 1;
+                    return new String(b, start, i - start, StandardCharsets.UTF_8);
+                }
+                if (c == '\\') break;
+                i++;
+            }
+            if (scratch == null || scratch.length < end - start) scratch = new byte[Math.max(64, end - start)];
+            int n = i - start;
+            System.arraycopy(b, start, scratch, 0, n);
+            while (i < end) {
+                int run = i;
+                byte c;
+                while ((c = b[i]) != '"' && c != '\\') {
+                    if (++i == end) throw error("unterminated string");
+                }
+                System.arraycopy(b, run, scratch, n, i - run);
+                n += i - run;
+                if (c == '"') {
+                    pos = i + 1;
+                    return new String(scratch, 0, n, StandardCharsets.UTF_8);
+                }
+                if (++i >= end) break;
+                byte e = b[i++];
+                switch (e) {
+                    case 'n' -> scratch[n++] = '\n';
+                    case 'r' -> scratch[n++] = '\r';
+                    case 't' -> scratch[n++] = '\t';
+                    case 'b' -> scratch[n++] = '\b';
+                    case 'f' -> scratch[n++] = '\f';
+                    case 'u' -> {
+                        int cp = hex4(i);
+                        i += 4;
+                        if (Character.isHighSurrogate((char) cp) && i + 6 <= end && b[i] == '\\' && b[i + 1] == 'u') {
+                            int lo = hex4(i + 2);
+                            if (Character.isLowSurrogate((char) lo)) {
+                                cp = Character.toCodePoint((char) cp, (char) lo);
+                                i += 6;
+                            }
+                        }
+                        n = utf8(cp, n); // never longer than the escape, so scratch cannot overflow
+                    }
+                    default -> scratch[n++] = e; // \\, \", \/
+                }
+            }
+            throw error("unterminated string");
+        }
+
+        private int hex4(int i) {
+            if (i + 4 > end) throw error("bad \\u escape");
+            int v = 0;
+            for (int k = i; k < i + 4; k++) {
+                int d = Character.digit(b[k], 16);
+                if (d < 0) throw error("bad \\u escape");
+                v = v << 4 | d;
+            }
+            return v;
+        }
+
+        // A lone surrogate is written as its 3-byte form, which the decoder turns into U+FFFD.
+        private int utf8(int cp, int n) {
+            if (cp < 0x80) {
+                scratch[n++] = (byte) cp;
+            } else if (cp < 0x800) {
+                scratch[n++] = (byte) (0xC0 | cp >> 6);
+                scratch[n++] = (byte) (0x80 | cp & 0x3F);
+            } else if (cp < 0x10000) {
+                scratch[n++] = (byte) (0xE0 | cp >> 12);
+                scratch[n++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                scratch[n++] = (byte) (0x80 | cp & 0x3F);
+            } else {
+                scratch[n++] = (byte) (0xF0 | cp >> 18);
+                scratch[n++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                scratch[n++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                scratch[n++] = (byte) (0x80 | cp & 0x3F);
+            }
+            return n;
+        }
+
+        private int skipWs(int i) {
+            while (i < end && isWs(b[i])) i++;
+            return i;
+        }
+
+        private IllegalArgumentException error(String what) {
+            return new IllegalArgumentException("Bad JSON object: " + what + " at " + pos);
+        }
     }
 
+    // Key set for ObjectReader.key(Keys): key i is names[i], matched on its UTF-8 bytes.
+    public static final class Keys {
+        private final byte[][] names;
+
+        public Keys(String... names) {
+            this.names = new byte[names.length][];
+            for (int i = 0; i < names.length; i++) this.names[i] = names[i].getBytes(StandardCharsets.UTF_8);
+        }
 
-    private static int findStringEnd(String s, int quotePos) {
-        int i = quotePos + 1;
-        boolean esc = false;
-        while (i < s.length()) {
-            char c = s.charAt(i);
-            if (esc) esc = false;
-            else if (c == '\\') esc = true;
-            else if (c == '"') return i;
-            i++;
+        int indexOf(byte[] buf, int from, int to) {
+            int len = to - from;
+            for (int i = 0; i < names.length; i++) {
+                byte[] k = names[i];
+                if (k.length == len && Arrays.equals(buf, from, to, k, 0, len)) return i;
+            }
+            return -1;
         }
-        return -1;
     }
 
-    private static String parseJsonString(String rawStartingWithQuote) {
-        // rawStartingWithQuote begins with '"', may contain more tokens after the string.
-        int end = findStringEnd(rawStartingWithQuote, 0);
-        if (end < 0) throw new IllegalArgumentException("Bad JSON string");
-        String token = rawStartingWithQuote.substring(0, end + 1);
-        return unescapeJsonString(token);
+    // True if buf[from, to) holds nothing but JSON whitespace (a blank NDJSON line).
+    public static boolean isBlank(byte[] buf, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!isWs(buf[i])) return false;
+        }
+        return true;
     }
 
-    private static String unescapeJsonString(String tokenWithQuotes) {
-        // tokenWithQuotes: "...."
-        if (tokenWithQuotes.length() < 2) return "";
-        String s = tokenWithQuotes.substring(1, tokenWithQuotes.length() - 1);
-        StringBuilder sb = new StringBuilder(s.length());
-        boolean esc = false;
-        for (int i = 0; i < s.length(); i++) {
-            char c = s.charAt(i);
-            if (!esc) {
-                if (c == '\\') esc = true;
-                else sb.append(c);
-            } else {
-                esc = false;
-                switch (c) {
-                    case 'n' -> sb.append('\n');
-                    case 'r' -> sb.append('\r');
-                    case 't' -> sb.append('\t');
-                    case '\\' -> sb.append('\\');
-                    case '"' -> sb.append('"');
-                    default -> sb.append(c); // minimal
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+
+    private static boolean isWs(byte c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    // Growable byte buffer for writing JSON as UTF-8 without intermediate Strings. Strings are
+    // escaped the way this project always wrote them: \\ \" \n \r \t, everything else as is
+    // (a lone surrogate becomes '?', like String.getBytes). reset() makes it reusable; a buffer
+    // that grew past MAX_RETAINED is dropped then, so a reused writer stays small.
+    public static final class ByteWriter {
+        private static final int MAX_RETAINED = 64 * 1024;
+
+        private final int initial;
+        private byte[] buf;
+        private int size;
+        // open objects, innermost last: whether a member was written yet (decides the ',')
+        private boolean[] hasMember = new boolean[4];
+        private int depth;
+
+        public ByteWriter(int capacity) {
+            initial = Math.max(16, capacity);
+            buf = new byte[initial];
+        }
+
+        public ByteWriter reset() {
+            if (buf.length > MAX_RETAINED) buf = new byte[initial];
+            size = 0;
+            depth = 0;
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public ByteWriter raw(char c) {
+            ensure(1);
+            buf[size++] = (byte) c;
+            return this;
+        }
+
+        public ByteWriter raw(byte[] b) {
+            ensure(b.length);
+            System.arraycopy(b, 0, buf, size, b.length);
+            size += b.length;
+            return this;
+        }
+
+        // "name": as UTF-8, for key()
+        public static byte[] name(String name) {
+            ByteWriter w = new ByteWriter(name.length() + 3);
+            return w.string(name).raw(':').toByteArray();
+        }
+
+        public ByteWriter beginObject() {
+            if (depth == hasMember.length) hasMember = Arrays.copyOf(hasMember, depth * 2);
+            hasMember[depth++] = false;
+            return raw('{');
+        }
+
+        public ByteWriter endObject() {
+            if (depth == 0) throw new IllegalStateException("no open object");
+            depth--;
+            return raw('}');
+        }
+
+        // Member name from name(), after a ',' unless it is the first member of the open object.
+        public ByteWriter key(byte[] name) {
+            if (depth == 0) throw new IllegalStateException("key outside an object");
+            ensure(name.length + 1);
+            if (hasMember[depth - 1]) buf[size++] = ',';
+            hasMember[depth - 1] = true;
+            System.arraycopy(name, 0, buf, size, name.length);
+            size += name.length;
+            return this;
+        }
+
+        public ByteWriter number(int v) {
+            ensure(11);
+            long x = v;
+            if (x < 0) {
+                buf[size++] = '-';
+                x = -x;
+            }
+            int start = size;
+            do {
+                buf[size++] = (byte) ('0' + x % 10);
+                x /= 10;
+            } while (x != 0);
+            for (int i = start, j = size - 1; i < j; i++, j--) {
+                byte t = buf[i];
+                buf[i] = buf[j];
+                buf[j] = t;
+            }
+            return this;
+        }
+
+        // Quoted and escaped. Room for the worst case (3 bytes per char) is made once, so the
+        // loop writes without checks; plain ASCII takes the first branch only.
+        public ByteWriter string(String s) {
+            int n = s.length();
+            ensure(3 * n + 2);
+            byte[] b = buf;
+            int p = size;
+            b[p++] = '"';
+            for (int i = 0; i < n; i++) {
+                char c = s.charAt(i);
+                if (c < 0x80 && c != '"' && c != '\\' && c >= ' ') {
+                    b[p++] = (byte) c;
+                } else if (c < 0x80) {
+                    switch (c) {
+                        case '"' -> { b[p++] = '\\'; b[p++] = '"'; }
+                        case '\\' -> { b[p++] = '\\'; b[p++] = '\\'; }
+                        case '\n' -> { b[p++] = '\\'; b[p++] = 'n'; }
+                        case '\r' -> { b[p++] = '\\'; b[p++] = 'r'; }
+                        case '\t' -> { b[p++] = '\\'; b[p++] = 't'; }
+                        default -> b[p++] = (byte) c;
+                    }
+                } else if (c < 0x800) {
+                    b[p++] = (byte) (0xC0 | c >> 6);
+                    b[p++] = (byte) (0x80 | c & 0x3F);
+                } else if (!Character.isSurrogate(c)) {
+                    b[p++] = (byte) (0xE0 | c >> 12);
+                    b[p++] = (byte) (0x80 | c >> 6 & 0x3F);
+                    b[p++] = (byte) (0x80 | c & 0x3F);
+                } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    b[p++] = (byte) (0xF0 | cp >> 18);
+                    b[p++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                    b[p++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                    b[p++] = (byte) (0x80 | cp & 0x3F);
+                } else {
+                    b[p++] = '?';
                 }
             }
+            b[p++] = '"';
+            size = p;
+            return this;
+        }
+
+        public byte[] toByteArray() {
+            return Arrays.copyOf(buf, size);
+        }
+
+        @Override
+        public String toString() {
+            return new String(buf, 0, size, StandardCharsets.UTF_8);
+        }
+
+        public void writeTo(OutputStream out) throws IOException {
+            out.write(buf, 0, size);
+        }
+
+        private void ensure(int more) {
+            if (size + more > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + more));
         }
-        return sb.toString();
     }
 }
@@ -0,0 +1,369 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// HTTP load generator for IncidentServer (or IncidentRouter) with a configurable request mix.
+//
+// With --rate the load is open loop: request i is due at start + i/rate, and its latency is
+// measured from that due time, not from when a worker got around to sending it. A stalled
+// server therefore shows up in the percentiles instead of silently lowering the request rate
+// (no coordinated omission). --concurrency bounds the requests in flight; if it is too low
+// for the rate, the backlog is reported as latency as well. Without --rate every worker sends
+// its next request as soon as the previous one completed (closed loop, latency = service time).
+//
+// Query terms are drawn from DatasetGen's vocabulary, so run it against a DatasetGen store
+// with the same --vocab/--zipf. GET ids are uniform in 1..maxId (default: incident_next_id - 1
+// from /metrics). POST adds incidents, keep it out of the mix for read-only comparisons.
+//
+//   java -cp out LoadGen --url http://localhost:8080 --duration 30 --warmup 5 --concurrency 32
+//        [--rate 2000] [--mix get=50,search=25,multi=10,substring=5,ranked=5,post=5]
+//        [--maxId N] [--vocab 50000] [--zipf 1.0] [--seed 1] [--gzip] [--csv results.csv --label name]
+public class LoadGen {
+
+    enum Op { GET, SEARCH, MULTI, SUBSTRING, RANKED, POST }
+
+    public static void main(String[] args) throws Exception {
+        String url = "http://localhost:8080";
+        int durationSec = 30;
+        int warmupSec = 5;
+        int concurrency = 16;
+        double rate = 0;
+        String mixSpec = "get=50,search=25,multi=10,substring=5,ranked=5,post=5";
+        int maxId = 0;
+        int vocab = 50_000;
+        double zipf = 1.0;
+        long seed = 1;
+        boolean gzip = false;
+        Path csv = null;
+        String label = "run";
+        for (int i = 0; i < args.length; i++) {
+            if ("--url".equals(args[i]) && i + 1 < args.length) url = args[++i];
+            else if ("--duration".equals(args[i]) && i + 1 < args.length) durationSec = Integer.parseInt(args[++i]);
+            else if ("--warmup".equals(args[i]) && i + 1 < args.length) warmupSec = Integer.parseInt(args[++i]);
+            else if ("--concurrency".equals(args[i]) && i + 1 < args.length) concurrency = Integer.parseInt(args[++i]);
+            else if ("--rate".equals(args[i]) && i + 1 < args.length) rate = Double.parseDouble(args[++i]);
+            else if ("--mix".equals(args[i]) && i + 1 < args.length) mixSpec = args[++i];
+            else if ("--maxId".equals(args[i]) && i + 1 < args.length) maxId = Integer.parseInt(args[++i]);
+            else if ("--vocab".equals(args[i]) && i + 1 < args.length) vocab = Integer.parseInt(args[++i]);
+            else if ("--zipf".equals(args[i]) && i + 1 < args.length) zipf = Double.parseDouble(args[++i]);
+            else if ("--seed".equals(args[i]) && i + 1 < args.length) seed = Long.parseLong(args[++i]);
+            else if ("--gzip".equals(args[i])) gzip = true;
+            else if ("--csv".equals(args[i]) && i + 1 < args.length) csv = Paths.get(args[++i]);
+            else if ("--label".equals(args[i]) && i + 1 < args.length) label = args[++i];
+        }
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        if (maxId <= 0) maxId = discoverMaxId(client, url);
+        if (maxId <= 0) {
+            System.err.println("cannot read incident_next_id from " + url + "/metrics, pass --maxId");
+            return;
+        }
+
+        LoadGen gen = new LoadGen(client, url, Mix.parse(mixSpec), maxId, new DatasetGen.Zipf(vocab, zipf), gzip);
+        System.out.printf("%s %s for %ds (+%ds warmup), concurrency=%d, %s, maxId=%d%n", label, url, durationSec, warmupSec,
+                concurrency, rate > 0 ? "open loop at " + rate + " req/s" : "closed loop", maxId);
+
+        Result[] results = gen.run(concurrency, rate, warmupSec, durationSec, seed);
+        double seconds = gen.measuredNanos / 1e9;
+        print(results, seconds);
+        if (csv != null) appendCsv(csv, label, rate, concurrency, results, seconds);
+    }
+
+    private static int discoverMaxId(HttpClient client, String url) {
+        try {
+            HttpResponse<String> resp = client.send(HttpRequest.newBuilder(URI.create(url + "/metrics")).GET().build(),
+                    HttpResponse.BodyHandlers.ofString());
+            for (String line : resp.body().split("\n")) {
+                if (line.startsWith("incident_next_id ")) return Integer.parseInt(line.substring(17).trim()) - 1;
+            }
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+        }
+        return 0;
+    }
+
+    // Weighted choice of operations, e.g. "get=70,search=30".
+    static final class Mix {
+        final Op[] ops;
+        final int[] cumulative;
+
+        private Mix(Op[] ops, int[] cumulative) {
+            this.ops = ops;
+            this.cumulative = cumulative;
+        }
+
+        static Mix parse(String spec) {
+            List<Op> ops = new ArrayList<>();
+            List<Integer> cum = new ArrayList<>();
+            int total = 0;
+            for (String part : spec.split(",")) {
+                String[] kv = part.split("=");
+                int w = Integer.parseInt(kv[1].trim());
+                if (w <= 0) continue;
+                total += w;
+                ops.add(Op.valueOf(kv[0].trim().toUpperCase(Locale.ROOT)));
+                cum.add(total);
+            }
+            if (ops.isEmpty()) throw new IllegalArgumentException("empty mix: " + spec);
+            return new Mix(ops.toArray(new Op[0]), cum.stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        Op next(SplittableRandom rnd) {
+            int r = rnd.nextInt(cumulative[cumulative.length - 1]);
+            for (int i = 0; ; i++) if (r < cumulative[i]) return ops[i];
+        }
+    }
+
+    // Per-operation outcome of the measured part of a run.
+    static final class Result {
+        final Histogram latency = new Histogram();
+        long errors;
+
+        void merge(Result o) {
+            latency.merge(o.latency);
+            errors += o.errors;
+        }
+    }
+
+    private final HttpClient client;
+    private final String url;
+    private final Mix mix;
+    private final int maxId;
+    private final DatasetGen.Zipf words;
+    private final boolean gzip;
+    long measuredNanos; // from the end of the warmup until the last measured request completed
+
+    LoadGen(HttpClient client, String url, Mix mix, int maxId, DatasetGen.Zipf words, boolean gzip) {
+        this.client = client;
+        this.url = url;
+        this.mix = mix;
+        this.maxId = maxId;
+        this.words = words;
+        this.gzip = gzip;
+    }
+
+    Result[] run(int concurrency, double rate, int warmupSec, int durationSec, long seed) throws InterruptedException {
+        long start = System.nanoTime() + 100_000_000L; // let every worker reach the start line
+        long measureFrom = start + warmupSec * 1_000_000_000L;
+        long end = measureFrom + durationSec * 1_000_000_000L;
+        long period = rate > 0 ? (long) (1e9 / rate) : 0;
+        AtomicLong sequence = new AtomicLong();
+
+        Result[][] perWorker = new Result[concurrency][];
+        long[] lastDone = new long[concurrency];
+        Thread[] workers = new Thread[concurrency];
+        for (int w = 0; w < concurrency; w++) {
+            Result[] mine = newResults();
+            perWorker[w] = mine;
+            SplittableRandom rnd = new SplittableRandom(seed * 1_000_003 + w);
+            int worker = w;
+            workers[w] = new Thread(() -> {
+                LockSupport.parkNanos(start - System.nanoTime());
+                while (true) {
+                    long due;
+                    if (period > 0) {
+                        due = start + sequence.getAndIncrement() * period;
+                        if (due >= end) return;
+                        long wait = due - System.nanoTime();
+                        if (wait > 0) LockSupport.parkNanos(wait);
+                    } else {
+                        due = System.nanoTime();
+                        if (due >= end) return;
+                    }
+                    Op op = mix.next(rnd);
+                    boolean ok = send(op, rnd);
+                    if (due >= measureFrom) {
+                        long done = System.nanoTime();
+                        Result r = mine[op.ordinal()];
+                        r.latency.record(done - due);
+                        if (!ok) r.errors++;
+                        lastDone[worker] = done;
+                    }
+                }
+            }, "loadgen-" + w);
+            workers[w].start();
+        }
+        for (Thread t : workers) t.join();
+        // an overloaded server finishes the requests due in the window late: throughput is
+        // counted over the time it actually took
+        long last = end;
+        for (long t : lastDone) last = Math.max(last, t);
+        measuredNanos = last - measureFrom;
+
+        Result[] total = newResults();
+        for (Result[] rs : perWorker) for (int i = 0; i < rs.length; i++) total[i].merge(rs[i]);
+        return total;
+    }
+
+    private static Result[] newResults() {
+        Result[] rs = new Result[Op.values().length];
+        for (int i = 0; i < rs.length; i++) rs[i] = new Result();
+        return rs;
+    }
+
+    // One request; false on a transport error or an unexpected status.
+    private boolean send(Op op, SplittableRandom rnd) {
+        HttpRequest.Builder req;
+        switch (op) {
+            case GET:
+                req = HttpRequest.newBuilder(URI.create(url + "/incidents?id=" + (1 + rnd.nextInt(maxId)))).GET();
+                break;
+            case SEARCH:
+                req = search("q=" + term(rnd));
+                break;
+            case MULTI:
+                req = search("q=" + term(rnd) + "+" + term(rnd) + (rnd.nextInt(3) == 0 ? "+" + term(rnd) : ""));
+                break;
+            case SUBSTRING: {
+                String w = term(rnd);
+                int from = w.length() > 4 ? rnd.nextInt(w.length() - 3) : 0;
+                req = search("mode=substring&q=" + w.substring(from, Math.min(w.length(), from + 4)));
+                break;
+            }
+            case RANKED:
+                req = search("k=10&mode=or&q=" + term(rnd) + "+" + term(rnd));
+                break;
+            default:
+                String title = DatasetGen.text(rnd, words, 5, Integer.MAX_VALUE);
+                String body = DatasetGen.text(rnd, words, 30, 10);
+                String json = "{\"title\":\"" + title + "\",\"body\":\"" + body.replace("\n", "\\n") + "\"}";
+                req = HttpRequest.newBuilder(URI.create(url + "/incidents"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(json));
+        }
+        if (gzip) req.header("Accept-Encoding", "gzip");
+        try {
+            HttpResponse<Void> resp = client.send(req.timeout(Duration.ofSeconds(30)).build(), HttpResponse.BodyHandlers.discarding());
+            int code = resp.statusCode();
+            return code < 300 || (op == Op.GET && code == 404); // deleted ids are not an error of the server
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private HttpRequest.Builder search(String query) {
+        return HttpRequest.newBuilder(URI.create(url + "/incidents/search?" + query + "&limit=20")).GET();
+    }
+
+    private String term(SplittableRandom rnd) {
+        return URLEncoder.encode(DatasetGen.word(words.next(rnd)), StandardCharsets.UTF_8);
+    }
+
+    private static void print(Result[] results, double seconds) {
+        System.out.printf("%-10s %9s %7s %9s %9s %9s %9s %9s %9s %9s%n",
+                "op", "count", "errors", "req/s", "mean ms", "p50", "p90", "p99", "p99.9", "max");
+        Result all = new Result();
+        for (Op op : Op.values()) {
+            Result r = results[op.ordinal()];
+            if (r.latency.count() == 0) continue;
+            all.merge(r);
+            printRow(op.name().toLowerCase(Locale.ROOT), r, seconds);
+        }
+        printRow("all", all, seconds);
+    }
+
+    private static void printRow(String name, Result r, double seconds) {
+        Histogram h = r.latency;
+        System.out.printf("%-10s %9d %7d %9.1f %9.3f %9.3f %9.3f %9.3f %9.3f %9.3f%n", name, h.count(), r.errors,
+                h.count() / seconds, h.mean() / 1e6, h.percentile(0.5) / 1e6, h.percentile(0.9) / 1e6,
+                h.percentile(0.99) / 1e6, h.percentile(0.999) / 1e6, h.max() / 1e6);
+    }
+
+    // One line per operation, so runs of different releases can be put side by side.
+    private static void appendCsv(Path csv, String label, double rate, int concurrency, Result[] results, double seconds)
+            throws IOException {
+        boolean header = !Files.exists(csv);
+        try (Writer w = Files.newBufferedWriter(csv, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            if (header) w.write("time,label,rate,concurrency,op,count,errors,rps,mean_ms,p50_ms,p90_ms,p99_ms,p999_ms,max_ms\n");
+            String time = Instant.now().toString();
+            for (Op op : Op.values()) {
+                Histogram h = results[op.ordinal()].latency;
+                if (h.count() == 0) continue;
+                w.write(String.format(Locale.ROOT, "%s,%s,%.1f,%d,%s,%d,%d,%.1f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f%n",
+                        time, label, rate, concurrency, op.name().toLowerCase(Locale.ROOT), h.count(),
+                        results[op.ordinal()].errors, h.count() / seconds, h.mean() / 1e6,
+                        h.percentile(0.5) / 1e6, h.percentile(0.9) / 1e6, h.percentile(0.99) / 1e6,
+                        h.percentile(0.999) / 1e6, h.max() / 1e6));
+            }
+        }
+    }
+
+    // Log-linear latency histogram in nanoseconds: 32 sub-buckets per power of two, so a
+    // reported percentile is within about 3% of the exact value. Single writer (one per worker).
+    static final class Histogram {
+        private static final int SUB = 32;
+        private final long[] counts = new long[64 + 58 * SUB];
+        private long count;
+        private long sum;
+        private long max;
+
+        void record(long nanos) {
+            long v = Math.max(0, nanos);
+            counts[index(v)]++;
+            count++;
+            sum += v;
+            max = Math.max(max, v);
+        }
+
+        void merge(Histogram o) {
+            for (int i = 0; i < counts.length; i++) counts[i] += o.counts[i];
+            count += o.count;
+            sum += o.sum;
+            max = Math.max(max, o.max);
+        }
+
+        long count() {
+            return count;
+        }
+
+        double mean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        long max() {
+            return max;
+        }
+
+        // Middle of the bucket that holds the q-quantile.
+        long percentile(double q) {
+            if (count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(q * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(max, (lowest(i) + lowest(i + 1)) / 2);
+            }
+            return max;
+        }
+
+        private static int index(long v) {
+            if (v < 64) return (int) v;
+            int exp = 63 - Long.numberOfLeadingZeros(v); // >= 6
+            return 64 + (exp - 6) * SUB + (int) ((v >>> (exp - 5)) & (SUB - 1));
+        }
+
+        private static long lowest(int index) {
+            if (index < 64) return index;
+            int exp = (index - 64) / SUB + 6;
+            int sub = (index - 64) % SUB;
+            return (long) (SUB + sub) << (exp - 5);
+        }
+    }
+}
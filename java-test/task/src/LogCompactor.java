@@ -0,0 +1,146 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Compaction of local_incidents.ndjson: keeps only the last record of every id, so replaying
+// the log costs as much as the live data, not as much as its history.
+//
+// Tombstones are dropped together with the records they supersede when the incident was
+// created locally (one of its records has createdAt). Tombstones of incidents that come from
+// incidents_enriched.ndjson are kept, the enriched file would bring them back otherwise, and
+// so is the tombstone of the highest id in the log, which keeps nextId from reusing it.
+// Lines that do not parse or have no id are dropped; the loader skips them as well.
+public class LogCompactor {
+
+    // Records of log[0, upTo) that survive compaction, in file order.
+    public static final class Plan {
+        public final long upTo;
+        public final long records;
+        public final long[] offsets;
+        public final int[] lengths; // including the '\n'
+        public final long keptBytes;
+
+        Plan(long upTo, long records, long[] offsets, int[] lengths, long keptBytes) {
+            this.upTo = upTo;
+            this.records = records;
+            this.offsets = offsets;
+            this.lengths = lengths;
+            this.keptBytes = keptBytes;
+        }
+
+        public long droppedBytes() {
+            return upTo - keptBytes;
+        }
+
+        public String summary() {
+            return "records=" + records + " kept=" + offsets.length + " bytes=" + upTo + " keptBytes=" + keptBytes;
+        }
+    }
+
+    private static final class Last {
+        long offset;
+        int length;
+        boolean tombstone;
+        boolean local;
+    }
+
+    public interface RecordVisitor {
+        void visit(Incident inc, long offset, int length); // length includes the '\n'
+    }
+
+    // Parses the complete records of log[0, upTo) in file order; lines that do not parse or
+    // have no id are skipped. Returns the number of records visited.
+    public static long scan(Path log, long upTo, RecordVisitor visitor) throws IOException {
+        long records = 0;
+        try (InputStream in = Files.newInputStream(log)) {
+            byte[] buf = new byte[1 << 16];
+            byte[] line = new byte[4096];
+            long offset = 0; // start of the current line
+            long pos = 0;
+            int n = 0;
+            while (pos < upTo) {
+                int r = in.read(buf, 0, (int) Math.min(buf.length, upTo - pos));
+                if (r < 0) break;
+                for (int i = 0; i < r; i++, pos++) {
+                    byte b = buf[i];
+                    if (b != '\n') {
+                        if (n == line.length) line = Arrays.copyOf(line, n * 2);
+                        line[n++] = b;
+                        continue;
+                    }
+                    Incident inc = parse(line, n);
+                    if (inc != null) {
+                        records++;
+                        visitor.visit(inc, offset, (int) (pos + 1 - offset));
+                    }
+                    offset = pos + 1;
+                    n = 0;
+                }
+            }
+        }
+        return records;
+    }
+
+    // Reads log[0, upTo) once; upTo must be a record boundary (e.g. IncidentWal.durablePosition()).
+    public static Plan plan(Path log, long upTo) throws IOException {
+        IntObjectMap<Last> last = new IntObjectMap<>();
+        int[] maxId = new int[1];
+        long records = scan(log, upTo, (inc, offset, length) -> {
+            maxId[0] = Math.max(maxId[0], inc.id);
+            Last l = last.get(inc.id);
+            if (l == null) last.put(inc.id, l = new Last());
+            l.offset = offset;
+            l.length = length;
+            l.tombstone = inc.deleted;
+            l.local |= inc.createdAt != null;
+        });
+
+        int top = maxId[0];
+        List<Last> kept = new ArrayList<>(last.size());
+        last.forEach((id, l) -> {
+            if (!l.tombstone || !l.local || id == top) kept.add(l);
+        });
+        kept.sort((a, b) -> Long.compare(a.offset, b.offset));
+
+        long[] offsets = new long[kept.size()];
+        int[] lengths = new int[kept.size()];
+        long keptBytes = 0;
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = kept.get(i).offset;
+            lengths[i] = kept.get(i).length;
+            keptBytes += lengths[i];
+        }
+        return new Plan(upTo, records, offsets, lengths, keptBytes);
+    }
+
+    private static Incident parse(byte[] line, int n) {
+        if (JsonMini.isBlank(line, 0, n)) return null;
+        try {
+            Incident inc = Incident.fromNdjson(line, 0, n);
+            return inc.id == null ? null : inc;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // Copies the kept records to out (replaced if it exists) and syncs it. Adjacent records are
+    // copied as one range.
+    public static void write(Path log, Plan plan, Path out) throws IOException {
+        try (FileChannel src = FileChannel.open(log, StandardOpenOption.READ);
+             FileChannel dst = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                     StandardOpenOption.WRITE)) {
+            int i = 0;
+            while (i < plan.offsets.length) {
+                long start = plan.offsets[i];
+                long end = start + plan.lengths[i++];
+                while (i < plan.offsets.length && plan.offsets[i] == end) end += plan.lengths[i++];
+                for (long pos = start; pos < end; ) pos += src.transferTo(pos, end - pos, dst);
+            }
+            dst.force(false);
+        }
+    }
+}
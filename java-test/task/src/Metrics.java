@@ -0,0 +1,134 @@
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongSupplier;
+
+// Lock-free latency histograms, counters and gauges, rendered in Prometheus text format.
+// Routes and histograms are created up front (or once per new status code), so recording
+// on the request path is a few atomic increments and allocates nothing.
+public class Metrics {
+
+    // Bucket upper bounds in microseconds; the last bucket is +Inf.
+    private static final long[] BOUNDS_US = {
+            50, 100, 250, 500,
+            1_000, 2_500, 5_000, 10_000, 25_000, 50_000,
+            100_000, 250_000, 500_000,
+            1_000_000, 2_500_000, 5_000_000, 10_000_000
+    };
+
+    public static final class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS_US.length + 1);
+        private final AtomicLong sumMicros = new AtomicLong();
+
+        public void recordNanos(long nanos) {
+            long us = nanos / 1_000;
+            int i = 0;
+            while (i < BOUNDS_US.length && us > BOUNDS_US[i]) i++;
+            buckets.incrementAndGet(i);
+            sumMicros.addAndGet(us);
+        }
+
+        void render(StringBuilder sb, String name, String labels) {
+            long cumulative = 0;
+            for (int i = 0; i <= BOUNDS_US.length; i++) {
+                cumulative += buckets.get(i);
+                String le = i < BOUNDS_US.length ? seconds(BOUNDS_US[i]) : "+Inf";
+                sb.append(name).append("_bucket{").append(labels);
+                if (!labels.isEmpty()) sb.append(',');
+                sb.append("le=\"").append(le).append("\"} ").append(cumulative).append('\n');
+            }
+            String l = labels.isEmpty() ? "" : "{" + labels + "}";
+            sb.append(name).append("_sum").append(l).append(' ').append(seconds(sumMicros.get())).append('\n');
+            sb.append(name).append("_count").append(l).append(' ').append(cumulative).append('\n');
+        }
+    }
+
+    // One histogram per status code of a method+route pair.
+    public static final class Route {
+        private final String labels;
+        private final AtomicReferenceArray<Histogram> byStatus = new AtomicReferenceArray<>(600);
+
+        Route(String method, String path) {
+            this.labels = "method=\"" + method + "\",route=\"" + path + "\"";
+        }
+
+        public void record(int status, long nanos) {
+            if (status < 0 || status >= 600) status = 0;
+            Histogram h = byStatus.get(status);
+            if (h == null) {
+                byStatus.compareAndSet(status, null, new Histogram()); // first time only
+                h = byStatus.get(status);
+            }
+            h.recordNanos(nanos);
+        }
+    }
+
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+    private final List<String[]> routeOrder = new CopyOnWriteArrayList<>();
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> counters = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    public Route route(String method, String path) {
+        return routes.computeIfAbsent(method + " " + path, k -> {
+            routeOrder.add(new String[]{method, path});
+            return new Route(method, path);
+        });
+    }
+
+    // Standalone histogram, e.g. incident_wal_append_duration_seconds.
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, k -> new Histogram());
+    }
+
+    // Monotonic total read at scrape time; exported as <name>_total.
+    public void counter(String name, LongSupplier value) {
+        counters.put(name.endsWith("_total") ? name : name + "_total", value);
+    }
+
+    // Value read at scrape time.
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    public String renderPrometheus() {
+        StringBuilder sb = new StringBuilder(4096);
+
+        String http = "incident_http_request_duration_seconds";
+        sb.append("# HELP ").append(http).append(" Request latency by route and status.\n");
+        sb.append("# TYPE ").append(http).append(" histogram\n");
+        for (String[] mp : new ArrayList<>(routeOrder)) {
+            Route r = routes.get(mp[0] + " " + mp[1]);
+            for (int code = 0; code < 600; code++) {
+                Histogram h = r.byStatus.get(code);
+                if (h != null) h.render(sb, http, r.labels + ",code=\"" + code + "\"");
+            }
+        }
+
+        for (Map.Entry<String, Histogram> e : histograms.entrySet()) {
+            sb.append("# TYPE ").append(e.getKey()).append(" histogram\n");
+            e.getValue().render(sb, e.getKey(), "");
+        }
+
+        for (Map.Entry<String, LongSupplier> e : counters.entrySet()) {
+            sb.append("# TYPE ").append(e.getKey()).append(" counter\n");
+            sb.append(e.getKey()).append(' ').append(e.getValue().getAsLong()).append('\n');
+        }
+
+        for (Map.Entry<String, LongSupplier> e : gauges.entrySet()) {
+            sb.append("# TYPE ").append(e.getKey()).append(" gauge\n");
+            sb.append(e.getKey()).append(' ').append(e.getValue().getAsLong()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String seconds(long micros) {
+        return BigDecimal.valueOf(micros, 6).stripTrailingZeros().toPlainString();
+    }
+}
@@ -0,0 +1,210 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+// Parallel NDJSON loader: the file is cut into newline-aligned chunks, each chunk is
+// memory-mapped and parsed on a fork-join pool. Parsed incidents are kept per chunk in
+// file order, so the caller can apply them with "last line wins" semantics.
+public class NdjsonLoader {
+
+    private static final long MIN_CHUNK = 1L << 20;
+    private static final long MAX_CHUNK = 256L << 20;
+    private static final int MAX_REPORTED = 20;
+
+    public static final class Rejected {
+        public final long offset;
+        public final String reason;
+
+        Rejected(long offset, String reason) {
+            this.offset = offset;
+            this.reason = reason;
+        }
+
+        @Override
+        public String toString() {
+            return "@" + offset + ": " + reason;
+        }
+    }
+
+    public static final class Result {
+        public final Path file;
+        public final List<List<Incident>> chunks = new ArrayList<>();
+        public long lines;
+        public long loaded;
+        public long rejectedCount;
+        public final List<Rejected> rejected = new ArrayList<>(); // first MAX_REPORTED only
+        public int maxId;
+
+        Result(Path file) {
+            this.file = file;
+        }
+
+        public String summary() {
+            return "file=" + file + " lines=" + lines + " loaded=" + loaded + " rejected=" + rejectedCount +
+                    (rejected.isEmpty() ? "" : " first=" + rejected);
+        }
+    }
+
+    // Parses p from byte offset `from` to the end. Missing file gives an empty result.
+    public static Result load(Path p, long from, ForkJoinPool pool) throws IOException {
+        return load(p, from, Long.MAX_VALUE, pool);
+    }
+
+    // Same for [from, to); to should be a line start (or past the end of the file).
+    public static Result load(Path p, long from, long to, ForkJoinPool pool) throws IOException {
+        Result res = new Result(p);
+        if (!Files.exists(p)) return res;
+
+        try (FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)) {
+            long size = Math.min(ch.size(), to);
+            if (from >= size) return res;
+
+            long chunk = Math.min(MAX_CHUNK, Math.max(MIN_CHUNK, (size - from) / (pool.getParallelism() * 4L)));
+            List<long[]> ranges = new ArrayList<>();
+            long start = from;
+            while (start < size) {
+                long end = start + chunk >= size ? size : nextLineStart(ch, start + chunk, size);
+                ranges.add(new long[]{start, end});
+                start = end;
+            }
+
+            ChunkTask[] tasks = new ChunkTask[ranges.size()];
+            for (int i = 0; i < tasks.length; i++) tasks[i] = new ChunkTask(ch, ranges.get(i)[0], ranges.get(i)[1]);
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+
+            for (ChunkTask t : tasks) {
+                if (t.failure != null) throw t.failure;
+                res.chunks.add(t.parsed);
+                res.lines += t.lines;
+                res.loaded += t.parsed.size();
+                res.rejectedCount += t.rejected.size();
+                res.maxId = Math.max(res.maxId, t.maxId);
+                for (Rejected r : t.rejected) {
+                    if (res.rejected.size() >= MAX_REPORTED) break;
+                    res.rejected.add(r);
+                }
+            }
+        }
+        return res;
+    }
+
+    // Same as load(p, from, pool), but the file is parsed in line-aligned windows of about
+    // windowBytes, and each window's chunks go to sink (in file order) before the next window is
+    // parsed: only one window of parsed incidents is live at a time. The result has the totals
+    // and no chunks.
+    public static Result load(Path p, long from, long windowBytes, ForkJoinPool pool,
+                              Consumer<List<Incident>> sink) throws IOException {
+        Result total = new Result(p);
+        if (!Files.exists(p)) return total;
+
+        while (true) {
+            long to;
+            try (FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)) {
+                long size = ch.size();
+                if (from >= size) break;
+                to = size - from <= windowBytes ? Long.MAX_VALUE : nextLineStart(ch, from + windowBytes, size);
+            }
+            Result r = load(p, from, to, pool);
+            for (List<Incident> chunk : r.chunks) sink.accept(chunk);
+            total.lines += r.lines;
+            total.loaded += r.loaded;
+            total.rejectedCount += r.rejectedCount;
+            total.maxId = Math.max(total.maxId, r.maxId);
+            for (Rejected rej : r.rejected) {
+                if (total.rejected.size() >= MAX_REPORTED) break;
+                total.rejected.add(rej);
+            }
+            if (to == Long.MAX_VALUE) break;
+            from = to;
+        }
+        return total;
+    }
+
+    // Position right after the first '\n' at or after pos (or size).
+    private static long nextLineStart(FileChannel ch, long pos, long size) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(8192);
+        while (pos < size) {
+            buf.clear();
+            int n = ch.read(buf, pos);
+            if (n <= 0) break;
+            for (int i = 0; i < n; i++) {
+                if (buf.get(i) == '\n') return pos + i + 1;
+            }
+            pos += n;
+        }
+        return size;
+    }
+
+    private static final class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel ch;
+        private final long start;
+        private final long end;
+
+        final List<Incident> parsed = new ArrayList<>();
+        final List<Rejected> rejected = new ArrayList<>();
+        long lines;
+        int maxId;
+        IOException failure;
+
+        ChunkTask(FileChannel ch, long start, long end) {
+            this.ch = ch;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                byte[] line = new byte[4096];
+                int len = (int) (end - start);
+                int lineStart = 0;
+                for (int i = 0; i <= len; i++) {
+                    if (i < len && buf.get(i) != '\n') continue;
+                    int lineEnd = i;
+                    if (lineEnd > lineStart && buf.get(lineEnd - 1) == '\r') lineEnd--;
+                    int n = lineEnd - lineStart;
+                    if (n > 0) {
+                        if (n > line.length) line = new byte[Math.max(n, line.length * 2)];
+                        buf.get(lineStart, line, 0, n);
+                        parseLine(line, n, start + lineStart);
+                    }
+                    lineStart = i + 1;
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+
+        // line[0, n) is parsed as bytes; only the fields kept are decoded to Strings
+        private void parseLine(byte[] line, int n, long offset) {
+            if (JsonMini.isBlank(line, 0, n)) return;
+            lines++;
+            try {
+                Incident inc = Incident.fromNdjson(line, 0, n);
+                if (inc.id == null) {
+                    rejected.add(new Rejected(offset, "missing id"));
+                    return;
+                }
+                parsed.add(inc);
+                maxId = Math.max(maxId, inc.id);
+            } catch (Exception e) {
+                rejected.add(new Rejected(offset, e.getClass().getSimpleName() + ": " + e.getMessage()));
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+// Hash partitioning of incident ids: partition `index` of `count` owns the ids whose mixed
+// hash lands in its bucket. IncidentServer (--partition i/n) keeps only the ids it owns and
+// only assigns new ids it owns; IncidentRouter uses owner() to forward single-id requests.
+public final class Partition {
+
+    final int index;
+    final int count;
+
+    Partition(int index, int count) {
+        if (count < 1 || index < 0 || index >= count) {
+            throw new IllegalArgumentException("bad partition " + index + "/" + count);
+        }
+        this.index = index;
+        this.count = count;
+    }
+
+    // "i/n", e.g. 0/3
+    static Partition parse(String s) {
+        int slash = s.indexOf('/');
+        if (slash < 0) throw new IllegalArgumentException("expected i/n: " + s);
+        return new Partition(Integer.parseInt(s.substring(0, slash).trim()), Integer.parseInt(s.substring(slash + 1).trim()));
+    }
+
+    // murmur3's finalizer, reduced to [0, count) by its high bits. It must stay independent of
+    // the IntObjectMap hash (golden-ratio multiply, slot from the low bits): with the same
+    // hash, all ids of a partition share their low bits and crowd into 1/count of the store's
+    // home slots.
+    static int owner(int id, int count) {
+        int h = id;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return (int) (((h & 0xFFFFFFFFL) * count) >>> 32);
+    }
+
+    boolean owns(int id) {
+        return owner(id, count) == index;
+    }
+
+    @Override
+    public String toString() {
+        return index + "/" + count;
+    }
+}
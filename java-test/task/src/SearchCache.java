@@ -0,0 +1,162 @@
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bounded LRU cache of serialized /incidents/search responses, keyed by the normalized query.
+// Entries are dropped only when an inserted incident can change their result (for updates and
+// deletes the rule is applied to the old and the new version):
+//   and/phrase - the incident has every query term
+//   or         - the incident has any query term
+//   substring  - the incident's title or body contains the query
+// Ranked (k) entries use the same rule; BM25 statistics drift from unrelated inserts is ignored.
+public class SearchCache {
+
+    public static final class Entry {
+        final String key;
+        final byte[] body;
+        final String nextCursor;
+        final String scores;        // X-Scores of ranked queries
+        final String etag;
+        final boolean substring;
+        final boolean any;          // OR semantics
+        final Set<String> terms;    // word queries
+        final String needle;        // substring queries
+        final Compression.Cached compressed = new Compression.Cached();
+
+        Entry(String key, byte[] body, String nextCursor, String scores, String etag,
+              boolean substring, boolean any, Set<String> terms, String needle) {
+            this.key = key;
+            this.body = body;
+            this.nextCursor = nextCursor;
+            this.scores = scores;
+            this.etag = etag;
+            this.substring = substring;
+            this.any = any;
+            this.terms = terms;
+            this.needle = needle;
+        }
+    }
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final int maxEntryBytes;
+    private long bytes;
+
+    // Access-ordered: only get() may touch it, so invalidation scans below go through the
+    // term/substring sets, which hold the entries themselves, and never promote anything.
+    private final LinkedHashMap<String, Entry> lru = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<String, Set<Entry>> entriesByTerm = new HashMap<>();
+    private final Set<Entry> substringEntries = new HashSet<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public SearchCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = (int) Math.min(Integer.MAX_VALUE, Math.max(0, maxBytes / 8));
+    }
+
+    public boolean enabled() {
+        return maxEntries > 0;
+    }
+
+    // Responses larger than this are streamed and not cached.
+    public int maxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    public synchronized Entry get(String key) {
+        Entry e = lru.get(key);
+        if (e == null) misses.incrementAndGet();
+        else hits.incrementAndGet();
+        return e;
+    }
+
+    // Stores e only if storeVersion still equals the version the result was computed at.
+    // Checked under the cache lock, so an insert either sees the entry (and invalidates it)
+    // or has already bumped the version.
+    public synchronized boolean put(Entry e, AtomicLong storeVersion, long computedAt) {
+        if (!enabled() || e.body.length > maxEntryBytes || storeVersion.get() != computedAt) return false;
+        remove(e.key);
+        lru.put(e.key, e);
+        bytes += e.body.length;
+        if (e.substring) substringEntries.add(e);
+        else for (String t : e.terms) entriesByTerm.computeIfAbsent(t, x -> new HashSet<>()).add(e);
+
+        Iterator<Map.Entry<String, Entry>> it = lru.entrySet().iterator();
+        while ((lru.size() > maxEntries || bytes > maxBytes) && it.hasNext()) {
+            Entry old = it.next().getValue();
+            it.remove();
+            unlink(old);
+        }
+        return lru.containsKey(e.key);
+    }
+
+    // Called after an incident was replaced (now) or deleted (now == null).
+    public void onUpdate(Incident old, Incident now) {
+        onInsert(old);
+        if (now != null) onInsert(now);
+    }
+
+    // Called after an incident was added to the store and indexes.
+    public void onInsert(Incident inc) {
+        if (!enabled()) return;
+        String title = inc.title() == null ? "" : inc.title().toLowerCase(Locale.ROOT);
+        String body = inc.body() == null ? "" : inc.body().toLowerCase(Locale.ROOT);
+        Set<String> docTerms = new HashSet<>(InvertedIndex.tokens(title));
+        docTerms.addAll(InvertedIndex.tokens(body));
+
+        synchronized (this) {
+            if (lru.isEmpty()) return;
+            Set<Entry> affected = new HashSet<>();
+            for (String t : docTerms) {
+                Set<Entry> entries = entriesByTerm.get(t);
+                if (entries == null) continue;
+                for (Entry e : entries) {
+                    if (e.any || docTerms.containsAll(e.terms)) affected.add(e);
+                }
+            }
+            for (Entry e : substringEntries) {
+                if (title.contains(e.needle) || body.contains(e.needle)) affected.add(e);
+            }
+            for (Entry e : affected) remove(e.key);
+            invalidations.addAndGet(affected.size());
+        }
+    }
+
+    private void remove(String key) {
+        Entry e = lru.remove(key);
+        if (e != null) unlink(e);
+    }
+
+    private void unlink(Entry e) {
+        bytes -= e.body.length;
+        if (e.substring) {
+            substringEntries.remove(e);
+            return;
+        }
+        for (String t : e.terms) {
+            Set<Entry> entries = entriesByTerm.get(t);
+            if (entries == null) continue;
+            entries.remove(e);
+            if (entries.isEmpty()) entriesByTerm.remove(t);
+        }
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public long invalidations() {
+        return invalidations.get();
+    }
+
+    public synchronized long size() {
+        return lru.size();
+    }
+}
@@ -0,0 +1,157 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.Locale;
+
+// Append-only off-heap storage for incident text, so that millions of title/body strings
+// are not live heap objects the GC has to trace and copy.
+//
+// A record is a group of nullable strings stored as UTF-8, each prefixed with a varint
+// (0 = null, otherwise length + 1). Records never move and are addressed by a long handle
+// (segment << 32 | offset). Segments are direct buffers or regions of a memory-mapped scratch
+// file. Space of replaced records is not reused; it is given back on restart.
+public class TextArena implements Closeable {
+
+    public enum Kind {
+        DIRECT, MAPPED;
+
+        static Kind parse(String s) {
+            return valueOf(s.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private static final int SEGMENT = 64 << 20;
+
+    private final Kind kind;
+    private final FileChannel file; // MAPPED only
+    private volatile ByteBuffer[] segments = new ByteBuffer[0];
+    private int pos;                // write position in the last segment, guarded by this
+    private long fileEnd;           // MAPPED only, guarded by this
+    private volatile long usedBytes;
+
+    public TextArena(Kind kind, Path scratchFile) throws IOException {
+        this.kind = kind;
+        if (kind == Kind.MAPPED) {
+            file = FileChannel.open(scratchFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        } else {
+            file = null;
+        }
+    }
+
+    public Kind kind() {
+        return kind;
+    }
+
+    // Stores the fields as one record and returns its handle.
+    public synchronized long put(String... fields) {
+        byte[][] utf8 = new byte[fields.length][];
+        int size = 0;
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i] != null) {
+                utf8[i] = fields[i].getBytes(StandardCharsets.UTF_8);
+                size += utf8[i].length;
+            }
+            size += varintSize(utf8[i] == null ? 0 : utf8[i].length + 1);
+        }
+
+        ByteBuffer[] segs = segments;
+        if (segs.length == 0 || pos + size > segs[segs.length - 1].capacity()) {
+            segs = Arrays.copyOf(segs, segs.length + 1);
+            segs[segs.length - 1] = allocate(Math.max(SEGMENT, size));
+            pos = 0;
+        }
+        int seg = segs.length - 1;
+        ByteBuffer buf = segs[seg];
+        int start = pos;
+        int p = start;
+        for (byte[] b : utf8) {
+            p = putVarint(buf, p, b == null ? 0 : b.length + 1);
+            if (b != null) {
+                buf.put(p, b);
+                p += b.length;
+            }
+        }
+        pos = p;
+        usedBytes += size;
+        segments = segs; // publish after the bytes are written
+        return (long) seg << 32 | start;
+    }
+
+    // Field i of the record at handle.
+    public String get(long handle, int field) {
+        ByteBuffer buf = segments[(int) (handle >>> 32)];
+        int p = (int) handle;
+        for (int i = 0; ; i++) {
+            int v = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = buf.get(p++);
+                v |= (b & 0x7F) << shift;
+                if (b >= 0) break;
+            }
+            if (i == field) {
+                if (v == 0) return null;
+                byte[] out = new byte[v - 1];
+                buf.get(p, out);
+                return new String(out, StandardCharsets.UTF_8);
+            }
+            if (v > 0) p += v - 1;
+        }
+    }
+
+    // Drops every record. Only for startup, when no stored incident refers to the arena any more
+    // (a snapshot that was read into it and then rejected).
+    public synchronized void clear() {
+        segments = new ByteBuffer[0];
+        pos = 0;
+        fileEnd = 0;
+        usedBytes = 0;
+    }
+
+    public long usedBytes() {
+        return usedBytes;
+    }
+
+    public long capacityBytes() {
+        long c = 0;
+        for (ByteBuffer b : segments) c += b.capacity();
+        return c;
+    }
+
+    private ByteBuffer allocate(int size) {
+        if (kind == Kind.DIRECT) return ByteBuffer.allocateDirect(size);
+        try {
+            ByteBuffer b = file.map(FileChannel.MapMode.READ_WRITE, fileEnd, size);
+            fileEnd += size;
+            return b;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int varintSize(int v) {
+        int n = 1;
+        while ((v >>>= 7) != 0) n++;
+        return n;
+    }
+
+    private static int putVarint(ByteBuffer buf, int p, int v) {
+        while ((v & ~0x7F) != 0) {
+            buf.put(p++, (byte) (v & 0x7F | 0x80));
+            v >>>= 7;
+        }
+        buf.put(p++, (byte) v);
+        return p;
+    }
+
+    // Deletes the MAPPED scratch file; direct segments are freed once the arena is unreachable.
+    @Override
+    public void close() throws IOException {
+        if (file != null) file.close();
+    }
+}
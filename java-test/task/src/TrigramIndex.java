@@ -0,0 +1,80 @@
+import java.util.*;
+import java.util.function.ObjIntConsumer;
+
+// Character trigram index over lowercased title and body, for substring search.
+// A query of 3+ chars is narrowed to the intersection of its trigram postings;
+// the caller still verifies candidates with String.contains.
+public class TrigramIndex {
+
+    private final InvertedIndex postings = new InvertedIndex(false);
+
+    public static Set<String> trigrams(String lowerText) {
+        Set<String> out = new HashSet<>();
+        if (lowerText == null) return out;
+        for (int i = 0; i + 3 <= lowerText.length(); i++) {
+            out.add(lowerText.substring(i, i + 3));
+        }
+        return out;
+    }
+
+    private static Collection<String> trigramsOf(Incident inc) {
+        Set<String> all = trigrams(lower(inc.title()));
+        all.addAll(trigrams(lower(inc.body())));
+        return all;
+    }
+
+    private static void trigramsOf(Incident inc, ObjIntConsumer<String> emit) {
+        for (String t : trigramsOf(inc)) emit.accept(t, 1);
+    }
+
+    private static String lower(String s) {
+        return s == null ? null : s.toLowerCase(Locale.ROOT);
+    }
+
+    public void add(Incident inc) {
+        if (inc.id == null) return;
+        postings.addTerms(inc.id, trigramsOf(inc));
+    }
+
+    // old and now are two versions of the same incident.
+    public void update(Incident old, Incident now) {
+        postings.updateTerms(now.id, trigramsOf(old), trigramsOf(now));
+    }
+
+    public void remove(Incident inc) {
+        if (inc.id == null) return;
+        postings.removeTerms(inc.id, trigramsOf(inc));
+    }
+
+    public void addAll(Collection<Incident> incidents) {
+        postings.addAll(incidents, TrigramIndex::trigramsOf);
+    }
+
+    public void clear() {
+        postings.clear();
+    }
+
+    public int trigramCount() {
+        return postings.termCount();
+    }
+
+    // Whether the query is long enough to be narrowed by the index.
+    public static boolean usable(String lowerQuery) {
+        return lowerQuery.length() >= 3;
+    }
+
+    // Sorted candidate ids that contain every trigram of the query.
+    public int[] candidates(String lowerQuery) {
+        return postings.search(new ArrayList<>(trigrams(lowerQuery)), InvertedIndex.Mode.AND);
+    }
+
+    // Same candidates greater than after, computed lazily (see InvertedIndex.cursor).
+    public PrimitiveIterator.OfInt candidates(String lowerQuery, int after) {
+        return postings.cursor(new ArrayList<>(trigrams(lowerQuery)), InvertedIndex.Mode.AND, after);
+    }
+
+    // Underlying trigram -> ids lists (for snapshots).
+    InvertedIndex postings() {
+        return postings;
+    }
+}